@@ -1,17 +1,16 @@
 package ru.practicum.dto.compilation;
 
-import ru.practicum.client.StatsClient;
+import ru.practicum.dto.IdViewsDto;
 import ru.practicum.dto.event.EventMapper;
 import ru.practicum.model.Compilation;
 import ru.practicum.model.Event;
 
-import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 public class CompilationMapper {
 
-    public static CompilationDto toDto(Compilation compilation) {
+    public static CompilationDto toDto(Compilation compilation, IdViewsDto views) {
         CompilationDto compilationDto = new CompilationDto();
 
         compilationDto.setId(compilation.getId());
@@ -22,11 +21,8 @@ public class CompilationMapper {
         if (events == null || events.size() == 0) {
             return compilationDto;
         }
-        Map<Integer, Long> idViewsMap = StatsClient.getMapIdViews(events.stream()
-                .map(Event::getId)
-                .collect(Collectors.toList()));
         compilationDto.setEvents(compilation.getEvents().stream()
-                .map(e -> EventMapper.toShortDto(e, idViewsMap.get(e.getId())))
+                .map(e -> EventMapper.toShortDto(e, views.get(e.getId())))
                 .collect(Collectors.toSet()));
 
         return compilationDto;
@@ -5,6 +5,8 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.client.StatsClient;
+import ru.practicum.dto.IdViewsDto;
 import ru.practicum.dto.compilation.CompilationDto;
 import ru.practicum.dto.compilation.CompilationMapper;
 import ru.practicum.dto.compilation.NewCompilationDto;
@@ -34,6 +36,7 @@ public class CompilationService {
     private final CompilationJpaRepository compilationJpaRepository;
     private final EventService eventService;
     private final UserService userService;
+    private final StatsClient statsClient;
 
     public List<CompilationDto> getAllComps(boolean pinned, int from, int size) {
         PageRequest page = PageRequest.of(from / size, size, Sort.by("id").ascending());
@@ -41,7 +44,7 @@ public class CompilationService {
         List<Compilation> compilations = compilationJpaRepository.findByPinned(pinned, page);
 
         return compilations.stream()
-                .map(CompilationMapper::toDto)
+                .map(this::toDto)
                 .collect(Collectors.toList());
     }
 
@@ -53,7 +56,7 @@ public class CompilationService {
 
         Compilation compilation = compilationJpaRepository.findById(compId)
                 .orElseThrow(() -> new ElementNotFoundException("Элемент с id=" + compId + " не найден"));
-        return CompilationMapper.toDto(compilation);
+        return toDto(compilation);
     }
 
     @Transactional
@@ -89,7 +92,7 @@ public class CompilationService {
             eventSet = new HashSet<Event>();
         }
         Compilation compilation = compilationJpaRepository.save(CompilationMapper.toComp(newCompilationDto, eventSet));
-        return CompilationMapper.toDto(compilation);
+        return toDto(compilation);
     }
 
     @Transactional
@@ -126,6 +129,13 @@ public class CompilationService {
 
         compilation = compilationJpaRepository.save(compilation);
 
-        return CompilationMapper.toDto(compilation);
+        return toDto(compilation);
     }
-}
\ No newline at end of file
+
+    private CompilationDto toDto(Compilation compilation) {
+        Set<Event> events = compilation.getEvents();
+        IdViewsDto views = events == null || events.isEmpty() ? new IdViewsDto()
+                : statsClient.getEventViews(events.stream().mapToInt(Event::getId).toArray()).join();
+        return CompilationMapper.toDto(compilation, views);
+    }
+}
@@ -7,6 +7,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.client.StatsClient;
 import ru.practicum.dto.EndpointHitDto;
+import ru.practicum.dto.IdViewsDto;
 import ru.practicum.dto.categoty.CategoryDto;
 import ru.practicum.dto.categoty.CategoryMapper;
 import ru.practicum.dto.comment.CommentDto;
@@ -34,6 +35,7 @@ import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import static java.time.temporal.ChronoUnit.HOURS;
@@ -49,6 +51,7 @@ public class EventService {
     private final UserService userService;
     private final ParticipationService participationService;
     private final EntityManager entityManager;
+    private final StatsClient statsClient;
 
     @Transactional
     public EventFullDto createEvent(NewEventDto newEventDto, int userId) {
@@ -75,10 +78,10 @@ public class EventService {
         if (events.isEmpty()) {
             return new ArrayList<>();
         }
-        Map<Integer, Long> idViewsMap = StatsClient.getMapIdViews(events.stream().map(Event::getId).collect(Collectors.toList()));
+        IdViewsDto views = statsClient.getEventViews(events.stream().mapToInt(Event::getId).toArray()).join();
 
         return events.stream()
-                .map(e -> EventMapper.toShortDto(e, idViewsMap.getOrDefault(e.getId(), 0L)))
+                .map(e -> EventMapper.toShortDto(e, views.get(e.getId())))
                 .collect(Collectors.toList());
     }
 
@@ -87,12 +90,10 @@ public class EventService {
         PageRequest page = PageRequest.of(from / size, size, Sort.by("id").ascending());
 
         List<Event> events = eventJpaRepository.getAllByUser(userId, page);
-        Map<Integer, Long> idViewsMap = StatsClient.getMapIdViews(events.stream()
-                .map(Event::getId)
-                .collect(Collectors.toList()));
+        IdViewsDto views = statsClient.getEventViews(events.stream().mapToInt(Event::getId).toArray()).join();
 
         return events.stream()
-                .map(e -> EventMapper.toShortDto(e, idViewsMap.getOrDefault(e.getId(), 0L)))
+                .map(e -> EventMapper.toShortDto(e, views.get(e.getId())))
                 .collect(Collectors.toList());
     }
 
@@ -102,12 +103,13 @@ public class EventService {
         if (event == null) {
             throw new ElementNotFoundException("События с id=" + eventId + " и initiatorId=" + userId + " не найдено");
         }
-        Map<Integer, Long> idViewsMap = StatsClient.getMapIdViews(List.of(event.getId()));
+        /*просмотры запрашиваются параллельно с загрузкой комментариев*/
+        CompletableFuture<IdViewsDto> views = statsClient.getEventViews(new int[]{event.getId()});
         List<Comment> comments = commentJpaRepository.findAllByEventId(eventId);
         List<CommentDto> commentDtos = comments.stream()
                 .map(CommentMapper::toDto)
                 .collect(Collectors.toList());
-        return EventMapper.toFullDtoWithComments(event, idViewsMap.getOrDefault(event.getId(), 0L), commentDtos);
+        return EventMapper.toFullDtoWithComments(event, views.join().get(event.getId()), commentDtos);
     }
 
     public EventFullDto getEventById(int eventId) {
@@ -115,8 +117,8 @@ public class EventService {
         Event event = eventJpaRepository.findById(eventId)
                 .orElseThrow(() -> new ElementNotFoundException("События с id=" + eventId + " не найдено"));
 
-        Map<Integer, Long> idViewsMap = StatsClient.getMapIdViews(List.of(event.getId()));
-        return EventMapper.toFullDto(event, idViewsMap.getOrDefault(event.getId(), 0L));
+        IdViewsDto views = statsClient.getEventViews(new int[]{event.getId()}).join();
+        return EventMapper.toFullDto(event, views.get(event.getId()));
     }
 
     public EventFullDtoWithComments getEventWithCommentsById(int eventId) {
@@ -124,12 +126,13 @@ public class EventService {
         Event event = eventJpaRepository.findById(eventId)
                 .orElseThrow(() -> new ElementNotFoundException("События с id=" + eventId + " не найдено"));
 
-        Map<Integer, Long> idViewsMap = StatsClient.getMapIdViews(List.of(event.getId()));
+        /*просмотры запрашиваются параллельно с загрузкой комментариев*/
+        CompletableFuture<IdViewsDto> views = statsClient.getEventViews(new int[]{event.getId()});
         List<Comment> comments = commentJpaRepository.findAllByEventId(eventId);
         List<CommentDto> commentDtos = comments.stream()
                 .map(CommentMapper::toDto)
                 .collect(Collectors.toList());
-        return EventMapper.toFullDtoWithComments(event, idViewsMap.getOrDefault(event.getId(), 0L), commentDtos);
+        return EventMapper.toFullDtoWithComments(event, views.join().get(event.getId()), commentDtos);
     }
 
     public EventFullDtoWithComments getEventByIdWithStats(int eventId, HttpServletRequest request) {
@@ -144,7 +147,7 @@ public class EventService {
         endpointHitDto.setTimestamp(LocalDateTime.now().format(TIME_FORMAT));
         endpointHitDto.setUri(request.getRequestURI());
 
-        StatsClient.postHit(endpointHitDto);
+        statsClient.postHit(endpointHitDto);
 
         return eventDto;
     }
@@ -212,11 +215,11 @@ public class EventService {
         }
 
         eventJpaRepository.save(event);
-        Map<Integer, Long> idViewsMap = StatsClient.getMapIdViews(List.of(event.getId()));
+        IdViewsDto views = statsClient.getEventViews(new int[]{event.getId()}).join();
         Event updatedEvent = eventJpaRepository.findById(event.getId())
                 .orElseThrow(() -> new ElementNotFoundException("Событие с id=" + event.getId() + " не найден"));
 
-        return EventMapper.toFullDto(updatedEvent, idViewsMap.getOrDefault(event.getId(), 0L));
+        return EventMapper.toFullDto(updatedEvent, views.get(event.getId()));
     }
 
     @Transactional
@@ -292,12 +295,12 @@ public class EventService {
         }
 
         eventJpaRepository.save(event);
-        Map<Integer, Long> idViewsMap = StatsClient.getMapIdViews(List.of(event.getId()));
+        IdViewsDto views = statsClient.getEventViews(new int[]{event.getId()}).join();
 
         Event updatedEvent = eventJpaRepository.findById(event.getId())
                 .orElseThrow(() -> new ElementNotFoundException("Событие с id=" + event.getId() + " не найден"));
 
-        return EventMapper.toFullDto(updatedEvent, idViewsMap.getOrDefault(event.getId(), 0L));
+        return EventMapper.toFullDto(updatedEvent, views.get(event.getId()));
     }
 
     @Transactional
@@ -383,10 +386,10 @@ public class EventService {
         typedQuery.setMaxResults(size);
         resultEvents = typedQuery.getResultList();
 
-        Map<Integer, Long> idViewsMap = StatsClient.getMapIdViews(resultEvents.stream().map(Event::getId).collect(Collectors.toList()));
+        IdViewsDto views = statsClient.getEventViews(resultEvents.stream().mapToInt(Event::getId).toArray()).join();
 
         return resultEvents.stream()
-                .map(e -> EventMapper.toFullDto(e, idViewsMap.getOrDefault(e.getId(), 0L)))
+                .map(e -> EventMapper.toFullDto(e, views.get(e.getId())))
                 .collect(Collectors.toList());
     }
 
@@ -460,9 +463,9 @@ public class EventService {
         endpointHitDto.setTimestamp(LocalDateTime.now().format(TIME_FORMAT));
         endpointHitDto.setUri(request.getRequestURI());
 
-        StatsClient.postHit(endpointHitDto);
+        statsClient.postHit(endpointHitDto);
 
-        Map<Integer, Long> idViewsMap = StatsClient.getMapIdViews(resultEvents.stream().map(Event::getId).collect(Collectors.toList()));
+        IdViewsDto views = statsClient.getEventViews(resultEvents.stream().mapToInt(Event::getId).toArray()).join();
         Comparator<EventShortDto> comparator;
         if (sort != null && sort.equals("EVENT_DATE")) {
             comparator = Comparator.comparing(e -> LocalDateTime.parse(e.getEventDate(), TIME_FORMAT));
@@ -470,7 +473,7 @@ public class EventService {
             comparator = Comparator.comparing(EventShortDto::getViews);
         }
         return resultEvents.stream()
-                .map(e -> EventMapper.toShortDto(e, idViewsMap.getOrDefault(e.getId(), 0L)))
+                .map(e -> EventMapper.toShortDto(e, views.get(e.getId())))
                 .sorted(comparator)
                 .collect(Collectors.toList());
     }
@@ -484,10 +487,10 @@ public class EventService {
         if (eventList == null || eventList.isEmpty()) {
             return new HashSet<>();
         }
-        Map<Integer, Long> idViewsMap = StatsClient.getMapIdViews(eventList.stream().map(Event::getId).collect(Collectors.toList()));
+        IdViewsDto views = statsClient.getEventViews(eventList.stream().mapToInt(Event::getId).toArray()).join();
 
         return eventList.stream()
-                .map(e -> EventMapper.toFullDto(e, idViewsMap.getOrDefault(e.getId(), 0L)))
+                .map(e -> EventMapper.toFullDto(e, views.get(e.getId())))
                 .collect(Collectors.toSet());
     }
 
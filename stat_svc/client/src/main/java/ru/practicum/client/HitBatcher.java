@@ -0,0 +1,143 @@
+package ru.practicum.client;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.dto.BulkHitsResponse;
+import ru.practicum.dto.EndpointHitDto;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/*Буфер запросов для пакетной отправки в /hits: добавление без блокировок, фоновый поток отправляет накопленное
+пакетами по размеру пакета или по истечении flushInterval. Размер буфера ограничен, лишние запросы отбрасываются
+и учитываются в счетчиках; при остановке буфер отправляется целиком*/
+@Slf4j
+class HitBatcher {
+    private final Queue<EndpointHitDto> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder overflow = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final Function<List<EndpointHitDto>, CompletableFuture<BulkHitsResponse>> sender;
+    private final Predicate<List<EndpointHitDto>> fallback;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    /*fallback получает недоставленный пакет и возвращает true, если сохранил его для повторной отправки*/
+    HitBatcher(Function<List<EndpointHitDto>, CompletableFuture<BulkHitsResponse>> sender,
+               Predicate<List<EndpointHitDto>> fallback, int capacity, int batchSize, Duration flushInterval) {
+        this.sender = sender;
+        this.fallback = fallback;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.flusher = new Thread(this::run, "stats-hit-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    void add(EndpointHitDto hit) {
+        if (!running) {
+            overflow.increment();
+            return;
+        }
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            overflow.increment();
+            return;
+        }
+        queue.offer(hit);
+        if (size.get() >= batchSize) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    void stop(Duration timeout) {
+        running = false;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join(timeout.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (size.get() > 0) {
+            log.warn("При остановке не отправлено {} запросов в сервис статистики", size.get());
+        }
+    }
+
+    void bindTo(MeterRegistry registry) {
+        registry.gauge("stats.client.hits.buffered", size);
+        FunctionCounter.builder("stats.client.hits.sent", sent, LongAdder::sum).register(registry);
+        dropped(registry, "overflow", overflow);
+        dropped(registry, "rejected", rejected);
+        dropped(registry, "failed", failed);
+    }
+
+    private void run() {
+        List<EndpointHitDto> batch = new ArrayList<>(batchSize);
+        while (running || size.get() > 0) {
+            if (running && size.get() < batchSize) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+            EndpointHitDto hit;
+            while ((hit = queue.poll()) != null) {
+                batch.add(hit);
+                if (batch.size() == batchSize) {
+                    flush(batch);
+                }
+            }
+            flush(batch);
+        }
+    }
+
+    private void flush(List<EndpointHitDto> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        size.addAndGet(-batch.size());
+        try {
+            BulkHitsResponse response = sender.apply(batch).join();
+            if (response != null) {
+                sent.add(response.getAccepted());
+                rejected.add(response.getRejected());
+            }
+        } catch (RuntimeException e) {
+            if (StatsClient.isRetryable(e)) {
+                /*записанное сервером начало пакета повторно не отправляется*/
+                int processed = Math.min(StatsResponseException.processed(e), batch.size());
+                log.warn("Не удалось отправить пакет из {} запросов в сервис статистики: {}", batch.size(), e.toString());
+                sent.add(processed);
+                onFailure(batch.subList(processed, batch.size()));
+            } else {
+                /*повтор не поможет: пакет отклонен как некорректный*/
+                log.warn("Сервис статистики отклонил пакет из {} запросов: {}", batch.size(), e.toString());
+                rejected.add(batch.size());
+            }
+        }
+        batch.clear();
+    }
+
+    private void onFailure(List<EndpointHitDto> batch) {
+        if (!batch.isEmpty() && !fallback.test(new ArrayList<>(batch))) {
+            failed.add(batch.size());
+        }
+    }
+
+    private static void dropped(MeterRegistry registry, String reason, LongAdder count) {
+        FunctionCounter.builder("stats.client.hits.dropped", count, LongAdder::sum).tag("reason", reason).register(registry);
+    }
+}
@@ -0,0 +1,295 @@
+package ru.practicum.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.dto.BulkHitsResponse;
+import ru.practicum.dto.EndpointHitDto;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/*
+ * Запросы, которые не удалось доставить, дописываются в локальные файлы NDJSON (сегменты hits-<номер>.ndjson).
+ * Открытый сегмент закрывается по размеру segmentSize или через segmentMaxAge после открытия.
+ * Фоновый поток отправляет закрытые сегменты по порядку пакетами в /hits не быстрее replayRate запросов в секунду,
+ * позиция чтения сохраняется в replay.offset. В памяти держится не больше одного пакета, объем на диске ограничен maxSize.
+ * Доставка не меньше одного раза: при остановке между отправкой пакета и сохранением позиции пакет уйдет повторно.
+ * Повторяются только сетевые ошибки, 5xx и 429; пакет, отклоненный сервером как некорректный, пропускается.
+ */
+@Slf4j
+class HitSpool {
+    private static final String PREFIX = "hits-";
+    private static final String SUFFIX = ".ndjson";
+    private static final String OFFSET_FILE = "replay.offset";
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+    private final Function<List<EndpointHitDto>, CompletableFuture<BulkHitsResponse>> sender;
+    private final StatsClientProperties.Spool properties;
+    /*номер сегмента -> размер; последний - открытый на запись*/
+    private final TreeMap<Long, Long> segments = new TreeMap<>();
+    private final AtomicLong size = new AtomicLong();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder full = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final Thread replayer;
+    private OutputStream out;
+    private long active = -1;
+    private long activeOpenedNanos;
+    private volatile boolean running = true;
+
+    HitSpool(StatsClientProperties.Spool properties, ObjectMapper objectMapper,
+             Function<List<EndpointHitDto>, CompletableFuture<BulkHitsResponse>> sender) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.sender = sender;
+        this.directory = Path.of(properties.getDirectory());
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Long number = parseNumber(file);
+                    if (number != null) {
+                        segments.put(number, Files.size(file));
+                        size.addAndGet(Files.size(file));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть каталог " + directory, e);
+        }
+        if (!segments.isEmpty()) {
+            log.info("Найдено {} байт неотправленных запросов в {}", size.get(), directory);
+        }
+        this.replayer = new Thread(this::runReplay, "stats-hit-spool");
+        replayer.setDaemon(true);
+        replayer.start();
+    }
+
+    /*false - место в буфере закончилось или файл недоступен, запросы потеряны*/
+    synchronized boolean append(List<EndpointHitDto> hits) {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        try {
+            for (EndpointHitDto hit : hits) {
+                lines.write(objectMapper.writeValueAsBytes(hit));
+                lines.write('\n');
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        if (size.get() + lines.size() > properties.getMaxSize().toBytes()) {
+            full.add(hits.size());
+            return false;
+        }
+        try {
+            if (out == null || segments.get(active) >= properties.getSegmentSize().toBytes()) {
+                openSegment();
+            }
+            lines.writeTo(out);
+            out.flush();
+        } catch (IOException e) {
+            log.error("Не удалось записать {} запросов в {}: {}", hits.size(), directory, e.getMessage());
+            return false;
+        }
+        segments.merge(active, (long) lines.size(), Long::sum);
+        size.addAndGet(lines.size());
+        written.add(hits.size());
+        LockSupport.unpark(replayer);
+        return true;
+    }
+
+    void bindTo(MeterRegistry registry) {
+        registry.gauge("stats.client.spool.bytes", size);
+        FunctionCounter.builder("stats.client.spool.written", written, LongAdder::sum).register(registry);
+        FunctionCounter.builder("stats.client.spool.replayed", replayed, LongAdder::sum).register(registry);
+        FunctionCounter.builder("stats.client.hits.dropped", full, LongAdder::sum).tag("reason", "spool_full")
+                .register(registry);
+        FunctionCounter.builder("stats.client.hits.dropped", skipped, LongAdder::sum).tag("reason", "spool_rejected")
+                .register(registry);
+    }
+
+    void stop() {
+        running = false;
+        LockSupport.unpark(replayer);
+        try {
+            replayer.join(properties.getRetryInterval().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            closeSegment();
+        }
+    }
+
+    private void runReplay() {
+        while (running) {
+            Long segment = nextClosedSegment();
+            boolean progress = false;
+            if (segment != null) {
+                try {
+                    progress = replay(segment);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Повторная отправка запросов из {} отложена: {}", directory, e.toString());
+                }
+            }
+            if (!progress && running) {
+                LockSupport.parkNanos(this, properties.getRetryInterval().toNanos());
+            }
+        }
+    }
+
+    /*читаются только дописанные до конца файлы: открытый сегмент отправляется, когда истек его segmentMaxAge*/
+    private synchronized Long nextClosedSegment() {
+        if (segments.isEmpty()) {
+            return null;
+        }
+        long first = segments.firstKey();
+        if (first == active) {
+            if (System.nanoTime() - activeOpenedNanos < properties.getSegmentMaxAge().toNanos()) {
+                return null;
+            }
+            closeSegment();
+        }
+        return first;
+    }
+
+    /*отправляет один пакет; true - сегмент продвинулся*/
+    private boolean replay(long segment) throws IOException {
+        Path file = segmentPath(segment);
+        long offset = readOffset(segment);
+        List<EndpointHitDto> batch = new ArrayList<>();
+        /*позиция за каждой строкой пакета*/
+        List<Long> ends = new ArrayList<>();
+        long end = offset;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(offset);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while (batch.size() < properties.getBatchSize() && (b = in.read()) >= 0) {
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                end += line.size() + 1;
+                try {
+                    batch.add(objectMapper.readValue(line.toByteArray(), EndpointHitDto.class));
+                    ends.add(end);
+                } catch (JsonProcessingException e) {
+                    log.warn("Пропущена поврежденная строка в {}", file);
+                }
+                line.reset();
+            }
+        }
+        if (batch.isEmpty()) {
+            /*конец сегмента; недописанная строка после аварийной остановки отбрасывается*/
+            deleteSegment(segment);
+            return true;
+        }
+        try {
+            sender.apply(batch).join();
+            replayed.add(batch.size());
+        } catch (RuntimeException e) {
+            if (StatsClient.isRetryable(e)) {
+                /*записанное сервером начало пакета пропускается при повторе*/
+                int processed = Math.min(StatsResponseException.processed(e), batch.size());
+                if (processed > 0) {
+                    writeOffset(segment, ends.get(processed - 1));
+                    replayed.add(processed);
+                }
+                throw e;
+            }
+            /*некорректный пакет пропускается, иначе он навсегда остановит отправку следующих сегментов*/
+            skipped.add(batch.size());
+            log.warn("Сервис статистики отклонил пакет из {} запросов из {}, пакет пропущен: {}", batch.size(), file, e.toString());
+        }
+        writeOffset(segment, end);
+        /*ограничение скорости, чтобы восстановившийся сервер не получил весь накопленный объем сразу*/
+        LockSupport.parkNanos(this, batch.size() * 1_000_000_000L / Math.max(1, properties.getReplayRate()));
+        return true;
+    }
+
+    private void openSegment() throws IOException {
+        closeSegment();
+        active = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        out = Files.newOutputStream(segmentPath(active), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        segments.put(active, 0L);
+        activeOpenedNanos = System.nanoTime();
+    }
+
+    private void closeSegment() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.warn("Не удалось закрыть сегмент {}: {}", segmentPath(active), e.getMessage());
+            }
+            out = null;
+        }
+        active = -1;
+    }
+
+    private synchronized void deleteSegment(long segment) throws IOException {
+        Files.deleteIfExists(segmentPath(segment));
+        Long removed = segments.remove(segment);
+        if (removed != null) {
+            size.addAndGet(-removed);
+        }
+        Files.deleteIfExists(directory.resolve(OFFSET_FILE));
+    }
+
+    private long readOffset(long segment) throws IOException {
+        Path file = directory.resolve(OFFSET_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        String[] parts = Files.readString(file, StandardCharsets.UTF_8).trim().split(" ");
+        return parts.length == 2 && Long.parseLong(parts[0]) == segment ? Long.parseLong(parts[1]) : 0;
+    }
+
+    private void writeOffset(long segment, long offset) throws IOException {
+        Path tmp = directory.resolve(OFFSET_FILE + ".tmp");
+        Files.writeString(tmp, segment + " " + offset, StandardCharsets.UTF_8);
+        Files.move(tmp, directory.resolve(OFFSET_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, number, SUFFIX));
+    }
+
+    private static Long parseNumber(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -1,126 +1,316 @@
 package ru.practicum.client;
 
-import org.springframework.boot.web.client.RestTemplateBuilder;
-import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.http.*;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.springframework.lang.Nullable;
-import org.springframework.web.client.HttpStatusCodeException;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.web.util.DefaultUriBuilderFactory;
+import org.springframework.stereotype.Component;
+import ru.practicum.dto.BulkHitsResponse;
 import ru.practicum.dto.EndpointHitDto;
 import ru.practicum.dto.EndpointStats;
+import ru.practicum.dto.IdViewsDto;
+import ru.practicum.dto.IdViewsQueryDto;
+import ru.practicum.dto.StatsQueryDto;
 
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.ToDoubleFunction;
 
-public class StatsClient {
+/*
+ * Клиент сервиса статистики на неблокирующем HttpClient 5: запросы не занимают потоков на время ожидания ответа,
+ * результат - CompletableFuture (завершается в потоке ввода-вывода клиента). Соединения держатся открытыми в пуле
+ * (keep-alive) с ограничением на маршрут и общим; при http2 запросы идут по HTTP/2.
+ * У каждого запроса есть сроки на соединение, ответ и общий срок; по общему сроку запрос прерывается.
+ * Ошибочный HTTP-статус дает пустой результат, сетевые ошибки и таймауты завершают future исключением.
+ * Недоставленный /hit сохраняется в HitSpool в отдельном потоке, чтобы запись на диск не занимала потоки ввода-вывода.
+ * Метрики пула: httpcomponents.httpclient.pool.* с тегом httpclient=stats-client
+ */
+@Component
+@Slf4j
+public class StatsClient implements MeterBinder {
     private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-    private static final RestTemplate rest;
+    private static final String EVENTS_PREFIX = "/events/";
+    private static final TypeReference<List<EndpointStats>> STATS_LIST = new TypeReference<>() {
+    };
+    private static final TypeReference<IdViewsDto> ID_VIEWS = new TypeReference<>() {
+    };
+    private static final TypeReference<BulkHitsResponse> BULK_RESPONSE = new TypeReference<>() {
+    };
 
-    static {
-        RestTemplateBuilder builder = new RestTemplateBuilder();
-        String serverUrl = "http://ewm-stat-server:9090";
-        rest = builder
-                .uriTemplateHandler(new DefaultUriBuilderFactory(serverUrl))
+    private final StatsClientProperties properties;
+    private final ObjectMapper objectMapper;
+    private final PoolingAsyncClientConnectionManager connectionManager;
+    private final CloseableHttpAsyncClient httpClient;
+    private final HitBatcher hitBatcher;
+    private final HitSpool hitSpool;
+    /*null, если HitSpool выключен*/
+    private final ExecutorService spoolExecutor;
+    private final ViewsCache viewsCache;
+
+    public StatsClient(StatsClientProperties properties, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(properties.getMaxConnections())
+                .setMaxConnPerRoute(properties.getMaxConnectionsPerRoute())
+                .build();
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(properties.getConnectTimeout().toMillis()))
+                .setResponseTimeout(Timeout.ofMilliseconds(properties.getReadTimeout().toMillis()))
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(properties.getConnectionRequestTimeout().toMillis()))
+                .build();
+        this.httpClient = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setVersionPolicy(versionPolicy(properties))
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(properties.getKeepAlive().toMillis()))
                 .build();
+        httpClient.start();
+        this.hitSpool = properties.getSpool().isEnabled()
+                ? new HitSpool(properties.getSpool(), objectMapper, this::postHits)
+                : null;
+        this.spoolExecutor = hitSpool != null ? Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "stats-hit-spool-writer");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        StatsClientProperties.Batch batch = properties.getBatch();
+        this.hitBatcher = batch.isEnabled()
+                ? new HitBatcher(this::postHits, this::spool, batch.getCapacity(), batch.getSize(), batch.getFlushInterval())
+                : null;
+        this.viewsCache = properties.getViews().isEnabled() ? new ViewsCache(properties.getViews(), this::fetchEventViews) : null;
     }
 
-    public static List<EndpointStats> getStats(LocalDateTime startTime, LocalDateTime endTime, @Nullable String[] uris, @Nullable Boolean unique) {
-        String startString = startTime.format(TIME_FORMAT);
-        String endString = endTime.format(TIME_FORMAT);
-        String startEncoded = URLEncoder.encode(startString, StandardCharsets.UTF_8);
-        String endEncoded = URLEncoder.encode(endString, StandardCharsets.UTF_8);
-        Map<String, Object> parameters = new HashMap<>();
-        parameters.put("start", startEncoded);
-        parameters.put("end", endEncoded);
-
-        StringBuilder sb = new StringBuilder();
-        sb.append("/stats?start={start}&end={end}");
-        if (uris != null) {
-            parameters.put("uris", uris);
-            sb.append("&uris={uris}");
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        poolGauge(registry, "httpcomponents.httpclient.pool.total.max", PoolStats::getMax);
+        poolGauge(registry, "httpcomponents.httpclient.pool.total.pending", PoolStats::getPending);
+        Gauge.builder("httpcomponents.httpclient.pool.total.connections", connectionManager,
+                        m -> m.getTotalStats().getAvailable())
+                .tags("httpclient", "stats-client", "state", "available").register(registry);
+        Gauge.builder("httpcomponents.httpclient.pool.total.connections", connectionManager,
+                        m -> m.getTotalStats().getLeased())
+                .tags("httpclient", "stats-client", "state", "leased").register(registry);
+        Gauge.builder("httpcomponents.httpclient.pool.route.max.default", connectionManager,
+                        PoolingAsyncClientConnectionManager::getDefaultMaxPerRoute)
+                .tag("httpclient", "stats-client").register(registry);
+        if (hitBatcher != null) {
+            hitBatcher.bindTo(registry);
+        }
+        if (hitSpool != null) {
+            hitSpool.bindTo(registry);
         }
-        if (unique != null) {
-            parameters.put("unique", unique);
-            sb.append("&unique={unique}");
+        if (viewsCache != null) {
+            viewsCache.bindTo(registry);
         }
-        return makeAndSendGetStatsRequest(HttpMethod.GET, sb.toString(), parameters, null);
     }
 
-    public static ResponseEntity<String> postHit(EndpointHitDto hit) {
-        ResponseEntity<String> responseEntity = makeAndSendPostHitRequest(HttpMethod.POST, "/hit", null, hit);
-        return responseEntity;
+    /*список uri передается в теле POST /stats/query, поэтому его длина не ограничена длиной URL*/
+    public CompletableFuture<List<EndpointStats>> getStats(LocalDateTime startTime, LocalDateTime endTime,
+                                                           @Nullable String[] uris, @Nullable Boolean unique) {
+        StatsQueryDto query = new StatsQueryDto();
+        query.setStart(startTime.format(TIME_FORMAT));
+        query.setEnd(endTime.format(TIME_FORMAT));
+        if (uris != null) {
+            query.setUris(Arrays.asList(uris));
+        }
+        query.setUnique(Boolean.TRUE.equals(unique));
+        return post("/stats/query", query).thenApply(response -> response.isOk() ? read(response, STATS_LIST) : null);
     }
 
-    public static Map<Integer, Long> getMapIdViews(Collection<Integer> eventsId) {
-        if (eventsId == null || eventsId.isEmpty()) {
-            return new HashMap<>();
+    /*результат можно не ждать: ошибки записываются в лог. В пакетном режиме future завершается сразу после постановки в буфер*/
+    public CompletableFuture<Void> postHit(EndpointHitDto hit) {
+        if (hitBatcher != null) {
+            hitBatcher.add(hit);
+            return CompletableFuture.completedFuture(null);
         }
-        List<String> eventUris = eventsId.stream()
-                .map(i -> "/events/" + i)
-                .collect(Collectors.toList());
+        Executor executor = spoolExecutor != null ? spoolExecutor : Runnable::run;
+        return post("/hit", hit).whenCompleteAsync((response, e) -> {
+            if (e == null && response.isOk()) {
+                return;
+            }
+            /*4xx кроме 429 - запрос некорректен, повторять его бессмысленно*/
+            boolean retryable = e != null || response.status >= 500 || response.status == 429;
+            if (retryable && spool(List.of(hit))) {
+                return;
+            }
+            if (e != null) {
+                log.warn("Не удалось отправить запрос {} в сервис статистики: {}", hit.getUri(), e.toString());
+            } else {
+                log.warn("Сервис статистики не принял запрос {}: статус {}", hit.getUri(), response.status);
+            }
+        }, executor).thenApply(response -> null);
+    }
 
-        String[] uriArray = new String[eventUris.size()];
-        eventUris.toArray(uriArray);
+    /*ошибочный статус завершает future исключением StatsResponseException с уже записанной частью пакета*/
+    public CompletableFuture<BulkHitsResponse> postHits(List<EndpointHitDto> hits) {
+        return post("/hits", hits).thenApply(response -> {
+            if (!response.isOk()) {
+                throw new StatsResponseException("/hits", response.status, readPartial(response));
+            }
+            return read(response, BULK_RESPONSE);
+        });
+    }
 
-        List<EndpointStats> endpointStatsList = getStats(LocalDateTime.of(1970, 01, 01, 01, 01), LocalDateTime.now(), uriArray, true);
+    /*уникальные просмотры событий за все время; id без просмотров возвращают 0. При включенном кэше - с отставанием до ttl*/
+    public CompletableFuture<IdViewsDto> getEventViews(int[] eventIds) {
+        if (eventIds == null || eventIds.length == 0) {
+            return CompletableFuture.completedFuture(new IdViewsDto());
+        }
+        CompletableFuture<IdViewsDto> views = viewsCache != null ? viewsCache.get(eventIds) : fetchEventViews(eventIds);
+        return views.thenApply(result -> result == null ? new IdViewsDto() : result);
+    }
 
-        if (endpointStatsList == null || endpointStatsList.isEmpty()) {
-            return eventsId.stream()
-                    .collect(Collectors.toMap(e -> e, e -> 0L));
+    @PreDestroy
+    public void close() {
+        /*последний пакет уходит (или сохраняется на диск) до закрытия пула соединений*/
+        if (hitBatcher != null) {
+            hitBatcher.stop(properties.getBatch().getShutdownTimeout());
+        }
+        if (spoolExecutor != null) {
+            spoolExecutor.shutdown();
+            try {
+                spoolExecutor.awaitTermination(properties.getSpool().getRetryInterval().toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (hitSpool != null) {
+            hitSpool.stop();
         }
+        httpClient.close(CloseMode.GRACEFUL);
+    }
 
-        Map<Integer, Long> idViewsMap = endpointStatsList.stream()
-                .collect(Collectors.toMap(e -> {
-                            String[] splitUri = e.getUri().split("/");
-                            return Integer.valueOf(splitUri[splitUri.length - 1]);
-                        },
-                        EndpointStats::getHits));
-        return idViewsMap;
+    /*сетевые ошибки, таймауты, 5xx и 429 - повторять; остальные статусы - сервер отклонил сами запросы*/
+    static boolean isRetryable(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return !(cause instanceof StatsResponseException) || ((StatsResponseException) cause).isRetryable();
     }
 
-    private static <T> List<EndpointStats> makeAndSendGetStatsRequest(HttpMethod method, String path, @Nullable Map<String, Object> parameters, @Nullable T body) {
-        HttpEntity<T> requestEntity = new HttpEntity<>(body, defaultHeaders());
+    private boolean spool(List<EndpointHitDto> hits) {
+        return hitSpool != null && hitSpool.append(hits);
+    }
+
+    /*null, если сервер вернул ошибочный статус*/
+    private CompletableFuture<IdViewsDto> fetchEventViews(int[] eventIds) {
+        IdViewsQueryDto query = new IdViewsQueryDto();
+        query.setPrefix(EVENTS_PREFIX);
+        query.setIds(eventIds);
+        query.setUnique(true);
+        return post("/stats/views", query).thenApply(response -> response.isOk() ? read(response, ID_VIEWS) : null);
+    }
 
-        ResponseEntity<List<EndpointStats>> ewmServerResponse;
+    private CompletableFuture<Response> post(String path, Object body) {
+        SimpleRequestBuilder request = SimpleRequestBuilder.post(properties.getUrl() + path)
+                .setHeader("Accept", "application/json");
         try {
-            if (parameters != null) {
-                ewmServerResponse = rest.exchange(path, method, requestEntity, new ParameterizedTypeReference<List<EndpointStats>>() {
-                }, parameters);
-            } else {
-                ewmServerResponse = rest.exchange(path, method, requestEntity, new ParameterizedTypeReference<List<EndpointStats>>() {
-                });
+            request.setBody(objectMapper.writeValueAsBytes(body), ContentType.APPLICATION_JSON);
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        Future<SimpleHttpResponse> exchange = httpClient.execute(request.build(), new FutureCallback<>() {
+            @Override
+            public void completed(SimpleHttpResponse response) {
+                future.complete(new Response(response.getCode(), response.getBodyBytes()));
             }
-        } catch (HttpStatusCodeException e) {
-            return null;
+
+            @Override
+            public void failed(Exception e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+        /*по общему сроку обмен прерывается и соединение закрывается*/
+        return future.orTimeout(properties.getTotalTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((response, e) -> {
+                    if (e instanceof TimeoutException) {
+                        exchange.cancel(true);
+                    }
+                });
+    }
+
+    /*для http:// HTTP/2 без TLS (h2c) включается сразу, для https:// согласуется через ALPN*/
+    private static HttpVersionPolicy versionPolicy(StatsClientProperties properties) {
+        if (!properties.isHttp2()) {
+            return HttpVersionPolicy.FORCE_HTTP_1;
         }
-        return ewmServerResponse.getBody();
+        return properties.getUrl().startsWith("https:") ? HttpVersionPolicy.NEGOTIATE : HttpVersionPolicy.FORCE_HTTP_2;
     }
 
-    private static <T> ResponseEntity<String> makeAndSendPostHitRequest(HttpMethod method, String path, @Nullable Map<String, Object> parameters, @Nullable T body) {
-        HttpEntity<T> requestEntity = new HttpEntity<>(body, defaultHeaders());
+    private void poolGauge(MeterRegistry registry, String name, ToDoubleFunction<PoolStats> value) {
+        Gauge.builder(name, connectionManager, m -> value.applyAsDouble(m.getTotalStats()))
+                .tag("httpclient", "stats-client").register(registry);
+    }
 
-        ResponseEntity<String> ewmServerResponse;
+    /*тело ошибки /hits содержит записанную часть пакета, если сервер успел ее записать*/
+    private BulkHitsResponse readPartial(Response response) {
         try {
-            if (parameters != null) {
-                ewmServerResponse = rest.exchange(path, method, requestEntity, String.class, parameters);
-            } else {
-                ewmServerResponse = rest.exchange(path, method, requestEntity, String.class);
-            }
-        } catch (HttpStatusCodeException e) {
+            BulkHitsResponse partial = read(response, BULK_RESPONSE);
+            return partial != null && partial.getError() != null ? partial : null;
+        } catch (UncheckedIOException e) {
+            return null;
+        }
+    }
+
+    private <T> T read(Response response, TypeReference<T> type) {
+        if (response.body == null) {
             return null;
         }
-        return ewmServerResponse;
+        try {
+            return objectMapper.readValue(response.body, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
-    private static HttpHeaders defaultHeaders() {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setAccept(List.of(MediaType.APPLICATION_JSON));
-        return headers;
+    private static class Response {
+        private final int status;
+        private final byte[] body;
+
+        Response(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        boolean isOk() {
+            return status / 100 == 2;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,71 @@
+package ru.practicum.client;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.client")
+public class StatsClientProperties {
+    private String url = "http://localhost:9090";
+    private Duration connectTimeout = Duration.ofSeconds(2);
+    /*ожидание ответа и максимальная пауза между пакетами ответа*/
+    private Duration readTimeout = Duration.ofSeconds(3);
+    /*ожидание свободного соединения в пуле*/
+    private Duration connectionRequestTimeout = Duration.ofSeconds(1);
+    /*общий срок запроса с учетом ожидания в очереди; по истечении запрос прерывается*/
+    private Duration totalTimeout = Duration.ofSeconds(5);
+    private int maxConnections = 50;
+    private int maxConnectionsPerRoute = 20;
+    /*неиспользуемые соединения закрываются после keepAlive*/
+    private Duration keepAlive = Duration.ofSeconds(30);
+    /*HTTP/2: для http:// - h2c без Upgrade (сервер должен его поддерживать), для https:// - через ALPN*/
+    private boolean http2 = false;
+    private final Batch batch = new Batch();
+    private final Spool spool = new Spool();
+    private final Views views = new Views();
+
+    @Getter
+    @Setter
+    public static class Batch {
+        /*postHit кладет запрос в буфер, отправка - пакетами в /hits из фонового потока*/
+        private boolean enabled = false;
+        private int size = 200;
+        private Duration flushInterval = Duration.ofSeconds(1);
+        /*сверх этого запросы отбрасываются*/
+        private int capacity = 10000;
+        private Duration shutdownTimeout = Duration.ofSeconds(5);
+    }
+
+    @Getter
+    @Setter
+    public static class Spool {
+        /*недоставленные запросы сохраняются на диск и отправляются повторно после восстановления сервиса*/
+        private boolean enabled = false;
+        private String directory = "stats-spool";
+        /*запись идет в открытый сегмент; к отправке он закрывается по размеру или через segmentMaxAge после открытия*/
+        private DataSize segmentSize = DataSize.ofMegabytes(8);
+        private Duration segmentMaxAge = Duration.ofSeconds(30);
+        /*сверх этого запросы отбрасываются*/
+        private DataSize maxSize = DataSize.ofMegabytes(256);
+        private int batchSize = 200;
+        /*запросов в секунду при повторной отправке*/
+        private int replayRate = 1000;
+        private Duration retryInterval = Duration.ofSeconds(5);
+    }
+
+    @Getter
+    @Setter
+    public static class Views {
+        /*просмотры событий берутся из кэша и отстают от сервиса статистики не больше чем на ttl*/
+        private boolean enabled = false;
+        private long maximumSize = 100000;
+        private Duration ttl = Duration.ofSeconds(30);
+        /*срок для id без просмотров*/
+        private Duration negativeTtl = Duration.ofSeconds(10);
+    }
+}
@@ -0,0 +1,40 @@
+package ru.practicum.client;
+
+import ru.practicum.dto.BulkHitsResponse;
+
+import java.util.concurrent.CompletionException;
+
+/*сервис статистики ответил ошибочным HTTP-статусом*/
+public class StatsResponseException extends RuntimeException {
+    private final int status;
+    private final BulkHitsResponse partial;
+
+    public StatsResponseException(String path, int status, BulkHitsResponse partial) {
+        super("Сервис статистики вернул статус " + status + " на " + path);
+        this.status = status;
+        this.partial = partial;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /*для /hits - уже записанная часть пакета (processed - с какого запроса повторять); null, если неизвестно*/
+    public BulkHitsResponse getPartial() {
+        return partial;
+    }
+
+    /*сколько запросов с начала пакета повторять не нужно*/
+    public static int processed(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (!(cause instanceof StatsResponseException) || ((StatsResponseException) cause).partial == null) {
+            return 0;
+        }
+        return ((StatsResponseException) cause).partial.getProcessed();
+    }
+
+    /*5xx и 429 - временная недоступность, запрос можно повторить; остальные статусы - запрос некорректен*/
+    public boolean isRetryable() {
+        return status >= 500 || status == 429;
+    }
+}
@@ -0,0 +1,86 @@
+package ru.practicum.client;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import ru.practicum.dto.IdViewsDto;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/*Кэш просмотров по id события. Из сервиса статистики запрашиваются только id, которых нет в кэше;
+id без просмотров тоже кэшируются (отдельный, обычно более короткий срок). Просмотры отстают не больше чем на ttl.
+Ответ с ошибочным статусом (null от loader) не кэшируется. Метрики: cache.* с тегом cache=stats.client.views*/
+class ViewsCache {
+    private final Cache<Integer, Long> cache;
+    private final Function<int[], CompletableFuture<IdViewsDto>> loader;
+
+    ViewsCache(StatsClientProperties.Views properties, Function<int[], CompletableFuture<IdViewsDto>> loader) {
+        this.loader = loader;
+        long ttlNanos = properties.getTtl().toNanos();
+        long negativeTtlNanos = properties.getNegativeTtl().toNanos();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfter(new Expiry<Integer, Long>() {
+                    @Override
+                    public long expireAfterCreate(Integer key, Long value, long currentTime) {
+                        return value == 0 ? negativeTtlNanos : ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Integer key, Long value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Integer key, Long value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "stats.client.views");
+    }
+
+    CompletableFuture<IdViewsDto> get(int[] ids) {
+        int[] sorted = Arrays.stream(ids).distinct().sorted().toArray();
+        Map<Integer, Long> cached = cache.getAllPresent(Arrays.stream(sorted).boxed().collect(Collectors.toList()));
+        if (cached.size() == sorted.length) {
+            return CompletableFuture.completedFuture(toDto(sorted, cached, null));
+        }
+        int[] missing = Arrays.stream(sorted).filter(id -> !cached.containsKey(id)).toArray();
+        return loader.apply(missing).thenApply(loaded -> {
+            if (loaded != null) {
+                for (int id : missing) {
+                    cache.put(id, loaded.get(id));
+                }
+            }
+            return toDto(sorted, cached, loaded);
+        });
+    }
+
+    /*id без просмотров в ответ не попадают, как и в ответе сервиса статистики*/
+    private static IdViewsDto toDto(int[] sorted, Map<Integer, Long> cached, IdViewsDto loaded) {
+        int[] ids = new int[sorted.length];
+        long[] hits = new long[sorted.length];
+        int count = 0;
+        for (int id : sorted) {
+            Long views = cached.get(id);
+            long value = views != null ? views : loaded == null ? 0 : loaded.get(id);
+            if (value > 0) {
+                ids[count] = id;
+                hits[count] = value;
+                count++;
+            }
+        }
+        return new IdViewsDto(Arrays.copyOf(ids, count), Arrays.copyOf(hits, count));
+    }
+}
@@ -0,0 +1,207 @@
+package ru.practicum.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import ru.practicum.dto.BulkHitsResponse;
+import ru.practicum.dto.EndpointHitDto;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HitSpoolTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<List<String>> delivered = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicBoolean available = new AtomicBoolean(true);
+    private final AtomicInteger attempts = new AtomicInteger();
+    /*сколько запросов следующего пакета сервер успеет записать перед ошибкой*/
+    private final AtomicInteger failAfter = new AtomicInteger(-1);
+    private HitSpool spool;
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void tearDown() {
+        if (spool != null) {
+            spool.stop();
+        }
+    }
+
+    @Test
+    void replaysAppendedHitsInOrderAndDeletesSegment() throws Exception {
+        spool = new HitSpool(properties(), objectMapper, this::send);
+
+        assertTrue(spool.append(hits("/1", "/2", "/3")));
+
+        await(() -> delivered.size() == 2 && segmentFiles().isEmpty());
+        assertEquals(List.of(List.of("/1", "/2"), List.of("/3")), delivered);
+    }
+
+    @Test
+    void keepsHitsWhileServerIsDown() throws Exception {
+        available.set(false);
+        spool = new HitSpool(properties(), objectMapper, this::send);
+        spool.append(hits("/1", "/2", "/3"));
+
+        await(() -> attempts.get() >= 2);
+        assertTrue(delivered.isEmpty());
+        available.set(true);
+
+        await(() -> delivered.size() == 2 && segmentFiles().isEmpty());
+        assertEquals(List.of(List.of("/1", "/2"), List.of("/3")), delivered);
+    }
+
+    @Test
+    void skipsBatchRejectedAsInvalid() throws Exception {
+        spool = new HitSpool(properties(), objectMapper, this::send);
+        spool.append(hits("/1", "/bad", "/3", "/4"));
+
+        await(() -> segmentFiles().isEmpty());
+        assertEquals(List.of(List.of("/3", "/4")), delivered);
+    }
+
+    @Test
+    void resendsOnlyUnprocessedPartOfFailedBatch() throws Exception {
+        failAfter.set(1);
+        spool = new HitSpool(properties(), objectMapper, this::send);
+        spool.append(hits("/1", "/2", "/3"));
+
+        await(() -> segmentFiles().isEmpty());
+        assertEquals(List.of(List.of("/1"), List.of("/2", "/3")), delivered);
+    }
+
+    @Test
+    void keepsActiveSegmentOpenUntilItIsFullOrOld() throws Exception {
+        StatsClientProperties.Spool properties = properties();
+        properties.setSegmentMaxAge(Duration.ofHours(1));
+        properties.setSegmentSize(DataSize.ofBytes(line("/1").length() + 1));
+        spool = new HitSpool(properties, objectMapper, this::send);
+        spool.append(hits("/1"));
+        spool.append(hits("/2"));
+
+        Thread.sleep(100);
+        assertEquals(0, attempts.get());
+
+        spool.append(hits("/3"));
+        await(() -> segmentFiles().size() == 1);
+        assertEquals(List.of(List.of("/1", "/2")), delivered);
+    }
+
+    @Test
+    void resumesFromSavedOffsetAfterRestart() throws Exception {
+        String first = line("/1");
+        Files.writeString(segment(1), first + line("/2") + line("/3"));
+        Files.writeString(directory.resolve("replay.offset"), "1 " + first.getBytes(StandardCharsets.UTF_8).length);
+
+        spool = new HitSpool(properties(), objectMapper, this::send);
+
+        await(() -> segmentFiles().isEmpty());
+        assertEquals(List.of(List.of("/2", "/3")), delivered);
+    }
+
+    @Test
+    void dropsTornLastLine() throws Exception {
+        Files.writeString(segment(1), line("/1") + "{\"app\":\"ewm\",\"uri\"");
+
+        spool = new HitSpool(properties(), objectMapper, this::send);
+
+        await(() -> segmentFiles().isEmpty());
+        assertEquals(List.of(List.of("/1")), delivered);
+    }
+
+    @Test
+    void rejectsHitsOverMaxSize() {
+        available.set(false);
+        StatsClientProperties.Spool properties = properties();
+        properties.setMaxSize(DataSize.ofBytes(200));
+        spool = new HitSpool(properties, objectMapper, this::send);
+
+        assertTrue(spool.append(hits("/1")));
+        assertFalse(spool.append(hits("/2", "/3", "/4")));
+    }
+
+    private CompletableFuture<BulkHitsResponse> send(List<EndpointHitDto> batch) {
+        attempts.incrementAndGet();
+        if (!available.get()) {
+            return CompletableFuture.failedFuture(new StatsResponseException("/hits", 503, null));
+        }
+        List<String> uris = batch.stream().map(EndpointHitDto::getUri).collect(Collectors.toList());
+        if (uris.contains("/bad")) {
+            return CompletableFuture.failedFuture(new StatsResponseException("/hits", 400, null));
+        }
+        int processed = failAfter.getAndSet(-1);
+        if (processed >= 0) {
+            delivered.add(uris.subList(0, processed));
+            BulkHitsResponse partial = new BulkHitsResponse();
+            partial.setProcessed(processed);
+            return CompletableFuture.failedFuture(new StatsResponseException("/hits", 503, partial));
+        }
+        delivered.add(uris);
+        return CompletableFuture.completedFuture(new BulkHitsResponse());
+    }
+
+    private StatsClientProperties.Spool properties() {
+        StatsClientProperties.Spool properties = new StatsClientProperties.Spool();
+        properties.setEnabled(true);
+        properties.setDirectory(directory.toString());
+        properties.setBatchSize(2);
+        properties.setReplayRate(1_000_000);
+        properties.setRetryInterval(Duration.ofMillis(20));
+        properties.setSegmentMaxAge(Duration.ofMillis(20));
+        return properties;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".ndjson")).collect(Collectors.toList());
+        }
+    }
+
+    private Path segment(long number) {
+        return directory.resolve(String.format("hits-%020d.ndjson", number));
+    }
+
+    private String line(String uri) throws IOException {
+        return objectMapper.writeValueAsString(hits(uri).get(0)) + "\n";
+    }
+
+    private static List<EndpointHitDto> hits(String... uris) {
+        List<EndpointHitDto> hits = new ArrayList<>();
+        for (String uri : uris) {
+            EndpointHitDto hit = new EndpointHitDto("ewm", uri, "10.0.0.1");
+            hit.setTimestamp("2026-01-01 10:00:00");
+            hits.add(hit);
+        }
+        return hits;
+    }
+
+    private static void await(Check check) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!check.done()) {
+            assertTrue(System.nanoTime() < deadline, "не дождались");
+            Thread.sleep(10);
+        }
+    }
+
+    private interface Check {
+        boolean done() throws Exception;
+    }
+}
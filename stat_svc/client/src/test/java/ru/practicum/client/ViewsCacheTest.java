@@ -0,0 +1,76 @@
+package ru.practicum.client;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.dto.IdViewsDto;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ViewsCacheTest {
+    private final List<int[]> requested = new ArrayList<>();
+    private IdViewsDto response;
+
+    @Test
+    void loadsOnlyMissingIds() {
+        ViewsCache cache = new ViewsCache(properties(Duration.ofSeconds(10)), this::load);
+        response = new IdViewsDto(new int[]{1, 2}, new long[]{10, 20});
+        cache.get(new int[]{2, 1}).join();
+
+        response = new IdViewsDto(new int[]{3}, new long[]{30});
+        IdViewsDto views = cache.get(new int[]{1, 3, 2, 3}).join();
+
+        assertEquals(2, requested.size());
+        assertArrayEquals(new int[]{3}, requested.get(1));
+        assertArrayEquals(new int[]{1, 2, 3}, views.getIds());
+        assertArrayEquals(new long[]{10, 20, 30}, views.getHits());
+    }
+
+    @Test
+    void expiresIdsWithoutViewsAfterNegativeTtl() throws InterruptedException {
+        ViewsCache cache = new ViewsCache(properties(Duration.ofMillis(100)), this::load);
+        response = new IdViewsDto(new int[]{1}, new long[]{10});
+        IdViewsDto views = cache.get(new int[]{1, 2}).join();
+        assertArrayEquals(new int[]{1}, views.getIds());
+
+        cache.get(new int[]{1, 2}).join();
+        assertEquals(1, requested.size());
+
+        Thread.sleep(200);
+        cache.get(new int[]{1, 2}).join();
+
+        assertEquals(2, requested.size());
+        assertArrayEquals(new int[]{2}, requested.get(1));
+    }
+
+    @Test
+    void doesNotCacheFailedResponse() {
+        ViewsCache cache = new ViewsCache(properties(Duration.ofSeconds(10)), this::load);
+        response = null;
+        IdViewsDto views = cache.get(new int[]{1}).join();
+        assertEquals(0, views.getIds().length);
+
+        response = new IdViewsDto(new int[]{1}, new long[]{10});
+        views = cache.get(new int[]{1}).join();
+
+        assertEquals(2, requested.size());
+        assertArrayEquals(new long[]{10}, views.getHits());
+    }
+
+    private CompletableFuture<IdViewsDto> load(int[] ids) {
+        requested.add(ids);
+        return CompletableFuture.completedFuture(response);
+    }
+
+    private static StatsClientProperties.Views properties(Duration negativeTtl) {
+        StatsClientProperties.Views properties = new StatsClientProperties.Views();
+        properties.setEnabled(true);
+        properties.setTtl(Duration.ofSeconds(10));
+        properties.setNegativeTtl(negativeTtl);
+        return properties;
+    }
+}
@@ -0,0 +1,21 @@
+package ru.practicum.dto;
+
+import lombok.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class BulkHitsResponse {
+    private int accepted;
+    private int rejected;
+    /*записей тела, обработанных с начала; при ошибке повторять начиная с записи с этим номером (с нуля)*/
+    private int processed;
+    /*null, если тело обработано целиком*/
+    private String error;
+    private List<HitsBatchResult> batches = new ArrayList<>();
+}
@@ -4,24 +4,15 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
 
-import javax.persistence.*;
 import java.time.LocalDateTime;
 
-@Entity
-@Table(name = "hits", schema = "public")
 @Getter
 @Setter
 @ToString
 public class EndpointHit {
-    @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    private int id;
-    @Column(name = "app")
+    private long id;
     private String app;
-    @Column(name = "uri")
     private String uri;
-    @Column(name = "ip")
     private String ip;
-    @Column(name = "timestamp")
     private LocalDateTime timestamp;
 }
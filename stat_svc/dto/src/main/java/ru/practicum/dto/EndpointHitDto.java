@@ -10,7 +10,7 @@ import javax.validation.constraints.NotBlank;
 @Setter
 @NoArgsConstructor
 public class EndpointHitDto {
-    private int id;
+    private long id;
     @NotBlank
     private String app;
     @NotBlank
@@ -0,0 +1,18 @@
+package ru.practicum.dto;
+
+import lombok.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class EndpointTimeSeries {
+    private String app;
+    private String uri;
+    /*только непустые корзины, по возрастанию времени*/
+    private List<TimeSeriesPoint> points = new ArrayList<>();
+}
@@ -0,0 +1,18 @@
+package ru.practicum.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class ExportParamDto {
+    /*ndjson | csv*/
+    private final String format;
+    /*выгрузка продолжается с записи, следующей за id = after*/
+    private final Long after;
+    private final String start;
+    private final String end;
+    private final String app;
+    private final String[] uris;
+    private final Integer limit;
+}
@@ -0,0 +1,14 @@
+package ru.practicum.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class HitsBatchResult {
+    private int batch;
+    private int accepted;
+    private int rejected;
+}
@@ -0,0 +1,22 @@
+package ru.practicum.dto;
+
+import lombok.*;
+
+import java.util.Arrays;
+
+/*Просмотры по id в виде двух параллельных массивов, ids отсортированы по возрастанию.
+Id без просмотров не передаются. Поиск - двоичный по массиву, без упаковки ключей и значений*/
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class IdViewsDto {
+    private int[] ids = new int[0];
+    private long[] hits = new long[0];
+
+    public long get(int id) {
+        int index = Arrays.binarySearch(ids, id);
+        return index < 0 ? 0 : hits[index];
+    }
+}
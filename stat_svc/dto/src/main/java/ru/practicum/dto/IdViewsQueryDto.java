@@ -0,0 +1,24 @@
+package ru.practicum.dto;
+
+import lombok.*;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+
+/*Тело POST /stats/views: uri вида prefix + id передаются как префикс и массив id*/
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class IdViewsQueryDto {
+    @NotBlank
+    private String prefix;
+    @NotNull
+    private int[] ids;
+    /*null - с начала учета*/
+    private String start;
+    /*null - по текущий момент*/
+    private String end;
+    private boolean unique;
+}
@@ -10,4 +10,8 @@ public class RequestParamDto {
     private final String end;
     private final String[] uris;
     private final boolean unique;
+    /*EXACT | APPROXIMATE, если null - режим из настроек сервера*/
+    private final String uniqueMode;
+    /*суммирование по первым groupDepth сегментам пути uri, null - без группировки*/
+    private final Integer groupDepth;
 }
@@ -0,0 +1,23 @@
+package ru.practicum.dto;
+
+import lombok.*;
+
+import javax.validation.constraints.NotBlank;
+import java.util.List;
+
+/*Тело POST /stats/query: тот же запрос, что GET /stats, но список uri не ограничен длиной URL*/
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class StatsQueryDto {
+    @NotBlank
+    private String start;
+    @NotBlank
+    private String end;
+    private List<String> uris;
+    private boolean unique;
+    private String uniqueMode;
+    private Integer groupDepth;
+}
@@ -0,0 +1,16 @@
+package ru.practicum.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class TimeSeriesParamDto {
+    private final String start;
+    private final String end;
+    private final String[] uris;
+    /*MINUTE | HOUR | DAY*/
+    private final String granularity;
+    private final boolean unique;
+    private final String uniqueMode;
+}
@@ -0,0 +1,14 @@
+package ru.practicum.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class TimeSeriesPoint {
+    /*начало корзины, yyyy-MM-dd HH:mm:ss*/
+    private String bucket;
+    private long hits;
+}
@@ -0,0 +1,14 @@
+package ru.practicum.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class TopParamDto {
+    private final int n;
+    private final String start;
+    private final String end;
+    /*null - по всем приложениям*/
+    private final String app;
+}
@@ -0,0 +1,72 @@
+package ru.practicum.columnar;
+
+import ru.practicum.model.AppUriId;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/*Изменяемый хвост хранилища: колонки в памяти в порядке поступления, при заполнении сохраняются в сегмент*/
+public class ColumnarBuffer {
+    private static final int IP_LENGTH = 16;
+
+    private final int[] apps;
+    private final int[] uris;
+    private final long[] seconds;
+    private final byte[] ips;
+    private int rows;
+
+    public ColumnarBuffer(int capacity) {
+        this.apps = new int[capacity];
+        this.uris = new int[capacity];
+        this.seconds = new long[capacity];
+        this.ips = new byte[capacity * IP_LENGTH];
+    }
+
+    public void add(int appId, int uriId, long epochSecond, byte[] ip) {
+        apps[rows] = appId;
+        uris[rows] = uriId;
+        seconds[rows] = epochSecond;
+        System.arraycopy(ip, 0, ips, rows * IP_LENGTH, IP_LENGTH);
+        rows++;
+    }
+
+    public boolean isFull() {
+        return rows == apps.length;
+    }
+
+    public boolean isEmpty() {
+        return rows == 0;
+    }
+
+    public ColumnarSegment seal(Path path) throws IOException {
+        return ColumnarSegment.write(path, apps, uris, seconds, ips, rows);
+    }
+
+    /*то же, что ColumnarSegment.count, полным просмотром*/
+    public void count(long from, long to, int[] uriIds, Map<AppUriId, Long> result) {
+        for (int row = 0; row < rows; row++) {
+            if (matches(row, from, to, uriIds)) {
+                result.merge(new AppUriId(apps[row], uris[row]), 1L, Long::sum);
+            }
+        }
+    }
+
+    public void collectIps(long from, long to, int[] uriIds, Map<AppUriId, Set<ByteBuffer>> result) {
+        for (int row = 0; row < rows; row++) {
+            if (matches(row, from, to, uriIds)) {
+                byte[] ip = Arrays.copyOfRange(ips, row * IP_LENGTH, (row + 1) * IP_LENGTH);
+                result.computeIfAbsent(new AppUriId(apps[row], uris[row]), k -> new HashSet<>()).add(ByteBuffer.wrap(ip));
+            }
+        }
+    }
+
+    private boolean matches(int row, long from, long to, int[] uriIds) {
+        return seconds[row] >= from && seconds[row] < to
+                && (uriIds == null || Arrays.binarySearch(uriIds, uris[row]) >= 0);
+    }
+}
@@ -0,0 +1,240 @@
+package ru.practicum.columnar;
+
+import ru.practicum.model.AppUriId;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/*
+ * Неизменяемый сегмент хранилища, строки отсортированы по времени.
+ * Формат: заголовок (число строк, мин./макс. время в секундах), словари сегмента (отсортированные id приложений и uri),
+ * колонки: время как смещение от минимума, номера приложения и uri в словарях сегмента, IP по 16 байт.
+ * Сегмент пропускается по диапазону времени из заголовка и по словарю uri, внутри - двоичный поиск по времени.
+ */
+public class ColumnarSegment {
+    private static final int MAGIC = 0x45574D43;
+    private static final int VERSION = 1;
+    private static final int HEADER = 4 + 4 + 4 + 8 + 8;
+    private static final int BLOCK = 4096;
+    private static final int IP_LENGTH = 16;
+
+    private final int rows;
+    private final long minSecond;
+    private final long maxSecond;
+    private final int[] appDictionary;
+    private final int[] uriDictionary;
+    private final PackedColumn seconds;
+    private final PackedColumn apps;
+    private final PackedColumn uris;
+    private final ByteBuffer ips;
+
+    private ColumnarSegment(int rows, long minSecond, long maxSecond, int[] appDictionary, int[] uriDictionary,
+                            PackedColumn seconds, PackedColumn apps, PackedColumn uris, ByteBuffer ips) {
+        this.rows = rows;
+        this.minSecond = minSecond;
+        this.maxSecond = maxSecond;
+        this.appDictionary = appDictionary;
+        this.uriDictionary = uriDictionary;
+        this.seconds = seconds;
+        this.apps = apps;
+        this.uris = uris;
+        this.ips = ips;
+    }
+
+    public static ColumnarSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Неизвестный формат сегмента " + path);
+            }
+            int rows = buffer.getInt();
+            long minSecond = buffer.getLong();
+            long maxSecond = buffer.getLong();
+            int[] appDictionary = readInts(buffer);
+            int[] uriDictionary = readInts(buffer);
+            PackedColumn seconds = PackedColumn.read(buffer, rows);
+            PackedColumn apps = PackedColumn.read(buffer, rows);
+            PackedColumn uris = PackedColumn.read(buffer, rows);
+            ByteBuffer ips = buffer.slice();
+            ips.limit(rows * IP_LENGTH);
+            return new ColumnarSegment(rows, minSecond, maxSecond, appDictionary, uriDictionary, seconds, apps, uris, ips);
+        }
+    }
+
+    /*файл пишется во временный и переименовывается, поэтому недописанный сегмент под своим именем не появляется*/
+    public static ColumnarSegment write(Path path, int[] appIds, int[] uriIds, long[] epochSeconds, byte[] ips, int rows)
+            throws IOException {
+        int[] order = IntStream.range(0, rows).boxed()
+                .sorted(Comparator.comparingLong(row -> epochSeconds[row]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        int[] appDictionary = Arrays.stream(appIds, 0, rows).distinct().sorted().toArray();
+        int[] uriDictionary = Arrays.stream(uriIds, 0, rows).distinct().sorted().toArray();
+        long minSecond = epochSeconds[order[0]];
+        long maxSecond = epochSeconds[order[rows - 1]];
+
+        long[] secondColumn = new long[rows];
+        long[] appColumn = new long[rows];
+        long[] uriColumn = new long[rows];
+        byte[] ipColumn = new byte[rows * IP_LENGTH];
+        for (int i = 0; i < rows; i++) {
+            int row = order[i];
+            secondColumn[i] = epochSeconds[row] - minSecond;
+            appColumn[i] = Arrays.binarySearch(appDictionary, appIds[row]);
+            uriColumn[i] = Arrays.binarySearch(uriDictionary, uriIds[row]);
+            System.arraycopy(ips, row * IP_LENGTH, ipColumn, i * IP_LENGTH, IP_LENGTH);
+        }
+
+        int size = HEADER + 4 * (2 + appDictionary.length + uriDictionary.length)
+                + PackedColumn.size(secondColumn, rows) + PackedColumn.size(appColumn, rows)
+                + PackedColumn.size(uriColumn, rows) + ipColumn.length;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(rows).putLong(minSecond).putLong(maxSecond);
+        writeInts(buffer, appDictionary);
+        writeInts(buffer, uriDictionary);
+        PackedColumn.write(buffer, secondColumn, rows);
+        PackedColumn.write(buffer, appColumn, rows);
+        PackedColumn.write(buffer, uriColumn, rows);
+        buffer.put(ipColumn);
+        buffer.flip();
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        return open(path);
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /*число строк по (app, uri) в полуинтервале [from, to) секунд; uriIds - отсортированные id или null*/
+    public void count(long from, long to, int[] uriIds, Map<AppUriId, Long> result) {
+        boolean[] mask = uriMask(uriIds);
+        if (!overlaps(from, to) || (uriIds != null && mask == null)) {
+            return;
+        }
+        int first = seconds.lowerBound(from - minSecond);
+        int last = seconds.lowerBound(to - minSecond);
+        int width = uriDictionary.length;
+        long[] counts = new long[appDictionary.length * width];
+        int[] appBlock = new int[BLOCK];
+        int[] uriBlock = new int[BLOCK];
+        for (int row = first; row < last; row += BLOCK) {
+            int length = Math.min(BLOCK, last - row);
+            apps.get(row, appBlock, length);
+            uris.get(row, uriBlock, length);
+            if (mask == null) {
+                for (int i = 0; i < length; i++) {
+                    counts[appBlock[i] * width + uriBlock[i]]++;
+                }
+            } else {
+                for (int i = 0; i < length; i++) {
+                    if (mask[uriBlock[i]]) {
+                        counts[appBlock[i] * width + uriBlock[i]]++;
+                    }
+                }
+            }
+        }
+        for (int group = 0; group < counts.length; group++) {
+            if (counts[group] > 0) {
+                AppUriId key = new AppUriId(appDictionary[group / width], uriDictionary[group % width]);
+                result.merge(key, counts[group], Long::sum);
+            }
+        }
+    }
+
+    /*множества IP по (app, uri) в полуинтервале [from, to) секунд*/
+    public void collectIps(long from, long to, int[] uriIds, Map<AppUriId, Set<ByteBuffer>> result) {
+        boolean[] mask = uriMask(uriIds);
+        if (!overlaps(from, to) || (uriIds != null && mask == null)) {
+            return;
+        }
+        int first = seconds.lowerBound(from - minSecond);
+        int last = seconds.lowerBound(to - minSecond);
+        int width = uriDictionary.length;
+        @SuppressWarnings("unchecked")
+        Set<ByteBuffer>[] groups = new Set[appDictionary.length * width];
+        int[] appBlock = new int[BLOCK];
+        int[] uriBlock = new int[BLOCK];
+        ByteBuffer source = ips.duplicate();
+        for (int row = first; row < last; row += BLOCK) {
+            int length = Math.min(BLOCK, last - row);
+            apps.get(row, appBlock, length);
+            uris.get(row, uriBlock, length);
+            for (int i = 0; i < length; i++) {
+                if (mask != null && !mask[uriBlock[i]]) {
+                    continue;
+                }
+                int group = appBlock[i] * width + uriBlock[i];
+                if (groups[group] == null) {
+                    groups[group] = new HashSet<>();
+                }
+                byte[] ip = new byte[IP_LENGTH];
+                source.position((row + i) * IP_LENGTH);
+                source.get(ip);
+                groups[group].add(ByteBuffer.wrap(ip));
+            }
+        }
+        for (int group = 0; group < groups.length; group++) {
+            if (groups[group] != null) {
+                AppUriId key = new AppUriId(appDictionary[group / width], uriDictionary[group % width]);
+                result.computeIfAbsent(key, k -> new HashSet<>()).addAll(groups[group]);
+            }
+        }
+    }
+
+    private boolean overlaps(long from, long to) {
+        return minSecond < to && maxSecond >= from;
+    }
+
+    /*null, если ни одного из uriIds нет в словаре сегмента (или uriIds == null)*/
+    private boolean[] uriMask(int[] uriIds) {
+        if (uriIds == null) {
+            return null;
+        }
+        boolean[] mask = new boolean[uriDictionary.length];
+        boolean any = false;
+        for (int uriId : uriIds) {
+            int code = Arrays.binarySearch(uriDictionary, uriId);
+            if (code >= 0) {
+                mask[code] = true;
+                any = true;
+            }
+        }
+        return any ? mask : null;
+    }
+
+    private static int[] readInts(ByteBuffer buffer) {
+        int[] values = new int[buffer.getInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = buffer.getInt();
+        }
+        return values;
+    }
+
+    private static void writeInts(ByteBuffer buffer, int[] values) {
+        buffer.putInt(values.length);
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package ru.practicum.columnar;
+
+import java.nio.ByteBuffer;
+
+/*Колонка неотрицательных целых одной ширины (1, 2, 4 или 8 байт), ширина выбирается по максимальному значению*/
+final class PackedColumn {
+    private final ByteBuffer buffer;
+    private final int width;
+
+    private PackedColumn(ByteBuffer buffer, int width) {
+        this.buffer = buffer;
+        this.width = width;
+    }
+
+    static int size(long[] values, int rows) {
+        return 1 + rows * width(values, rows);
+    }
+
+    static void write(ByteBuffer target, long[] values, int rows) {
+        int width = width(values, rows);
+        target.put((byte) width);
+        for (int i = 0; i < rows; i++) {
+            switch (width) {
+                case 1:
+                    target.put((byte) values[i]);
+                    break;
+                case 2:
+                    target.putShort((short) values[i]);
+                    break;
+                case 4:
+                    target.putInt((int) values[i]);
+                    break;
+                default:
+                    target.putLong(values[i]);
+            }
+        }
+    }
+
+    /*колонка читается из source с текущей позиции, позиция сдвигается за ее конец*/
+    static PackedColumn read(ByteBuffer source, int rows) {
+        int width = source.get();
+        ByteBuffer slice = source.slice();
+        slice.limit(rows * width);
+        source.position(source.position() + rows * width);
+        return new PackedColumn(slice, width);
+    }
+
+    long get(int row) {
+        int index = row * width;
+        switch (width) {
+            case 1:
+                return buffer.get(index) & 0xFFL;
+            case 2:
+                return buffer.getShort(index) & 0xFFFFL;
+            case 4:
+                return buffer.getInt(index) & 0xFFFFFFFFL;
+            default:
+                return buffer.getLong(index);
+        }
+    }
+
+    /*распаковка блока строк в int[]: ширина проверяется один раз на блок, а не на строку*/
+    void get(int from, int[] target, int length) {
+        ByteBuffer source = buffer.duplicate();
+        source.position(from * width);
+        switch (width) {
+            case 1:
+                for (int i = 0; i < length; i++) {
+                    target[i] = source.get() & 0xFF;
+                }
+                break;
+            case 2:
+                for (int i = 0; i < length; i++) {
+                    target[i] = source.getShort() & 0xFFFF;
+                }
+                break;
+            case 4:
+                source.asIntBuffer().get(target, 0, length);
+                break;
+            default:
+                for (int i = 0; i < length; i++) {
+                    target[i] = (int) source.getLong();
+                }
+        }
+    }
+
+    /*первая строка со значением >= value; значения колонки должны быть отсортированы*/
+    int lowerBound(long value) {
+        int low = 0;
+        int high = buffer.limit() / width;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (get(middle) < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int width(long[] values, int rows) {
+        long max = 0;
+        for (int i = 0; i < rows; i++) {
+            max = Math.max(max, values[i]);
+        }
+        if (max <= 0xFF) {
+            return 1;
+        }
+        if (max <= 0xFFFF) {
+            return 2;
+        }
+        return max <= Integer.MAX_VALUE ? 4 : 8;
+    }
+}
@@ -0,0 +1,20 @@
+package ru.practicum.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.compaction")
+public class CompactionProperties {
+    private boolean enabled = false;
+    /*сырые hits старше rawRetention уплотняются в агрегаты и скетчи и удаляются*/
+    private Duration rawRetention = Duration.ofDays(30);
+    /*период, уплотняемый одной транзакцией; округляется до целых часов*/
+    private Duration chunk = Duration.ofHours(1);
+    private int maxChunksPerRun = 24;
+    private int deleteBatchSize = 5000;
+}
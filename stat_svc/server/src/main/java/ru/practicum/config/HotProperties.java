@@ -0,0 +1,18 @@
+package ru.practicum.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.hot")
+public class HotProperties {
+    /*счетчики в памяти видят только запросы, записанные этим экземпляром, поэтому включать при одном сервере статистики*/
+    private boolean enabled = false;
+    private Duration window = Duration.ofHours(1);
+    private Duration slice = Duration.ofMinutes(1);
+    private int stripes = 16;
+}
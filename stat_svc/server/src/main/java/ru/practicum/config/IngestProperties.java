@@ -0,0 +1,27 @@
+package ru.practicum.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.ingest")
+public class IngestProperties {
+    /*SYNC - запись в БД в потоке запроса, ASYNC - через буфер и фоновую пакетную запись,
+    WAL - через журнал на диске (stats.wal) и фоновую пакетную запись*/
+    private IngestMode mode = IngestMode.SYNC;
+    private int queueCapacity = 10_000;
+    private int batchSize = 500;
+    private Duration flushInterval = Duration.ofMillis(200);
+    /*поведение при заполненном буфере: BLOCK - ждать offerTimeout, затем отказать, DROP_OLDEST - вытеснить
+    самый старый запрос из буфера, REJECT - сразу отказать. Отказ - 429 с заголовком Retry-After*/
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private Duration offerTimeout = Duration.ofMillis(100);
+    private Duration retryAfter = Duration.ofSeconds(1);
+    /*пауза между повторами записи пакета при недоступной БД; принятые запросы не отбрасываются до остановки*/
+    private Duration writeRetryInterval = Duration.ofSeconds(1);
+    private Duration shutdownTimeout = Duration.ofSeconds(10);
+}
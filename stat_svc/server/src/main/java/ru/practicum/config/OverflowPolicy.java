@@ -0,0 +1,7 @@
+package ru.practicum.config;
+
+public enum OverflowPolicy {
+    BLOCK,
+    DROP_OLDEST,
+    REJECT
+}
@@ -0,0 +1,21 @@
+package ru.practicum.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.parallel")
+public class ParallelProperties {
+    /*потоков на все параллельные запросы /stats; 1 - всегда последовательно*/
+    private int parallelism = 4;
+    /*диапазоны короче считаются одним запросом*/
+    private Duration serialThreshold = Duration.ofDays(7);
+    /*на сколько частей (по целым суткам) делится один диапазон*/
+    private int maxSplits = 16;
+    /*частей в очереди на все запросы; при переполнении часть считается в потоке запроса*/
+    private int queueCapacity = 256;
+}
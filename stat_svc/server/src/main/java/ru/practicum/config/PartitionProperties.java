@@ -0,0 +1,18 @@
+package ru.practicum.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.partition")
+public class PartitionProperties {
+    private PartitionInterval interval = PartitionInterval.DAY;
+    /*сколько будущих секций держать созданными заранее*/
+    private int precreate = 7;
+    /*секции, целиком старше retention, удаляются вместе с агрегатами и скетчами того же периода; 0 - хранить всё*/
+    private Duration retention = Duration.ZERO;
+}
@@ -0,0 +1,49 @@
+package ru.practicum.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import ru.practicum.datasource.ReplicaRoutingDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*Вместо автоконфигурируемого пула: основной пул из spring.datasource(.hikari) и пулы реплик stats.replica.
+Инициализация схемы, транзакции и запись идут в основную БД*/
+@Configuration
+@ConditionalOnProperty(prefix = "stats.replica", name = "enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    public ReplicaRoutingDataSource dataSource(DataSourceProperties dataSourceProperties, ReplicaProperties properties,
+                                               Environment environment) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        primary.setPoolName("primary");
+
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < properties.getUrls().size(); i++) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + (i + 1));
+            replica.setDriverClassName(dataSourceProperties.determineDriverClassName());
+            replica.setJdbcUrl(properties.getUrls().get(i));
+            replica.setUsername(properties.getUsername() == null
+                    ? dataSourceProperties.determineUsername() : properties.getUsername());
+            replica.setPassword(properties.getPassword() == null
+                    ? dataSourceProperties.determinePassword() : properties.getPassword());
+            replica.setMaximumPoolSize(properties.getMaximumPoolSize());
+            replica.setConnectionTimeout(properties.getConnectionTimeout().toMillis());
+            replica.setReadOnly(true);
+            /*недоступная при старте реплика не мешает запуску, ее подхватит проверка доступности*/
+            replica.setInitializationFailTimeout(-1);
+            replicas.add(replica);
+        }
+        return new ReplicaRoutingDataSource(primary, replicas, properties.getHealthCheckInterval(),
+                properties.getHealthCheckTimeout(), properties.getMaxLag());
+    }
+}
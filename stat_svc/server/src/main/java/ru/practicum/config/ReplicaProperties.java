@@ -0,0 +1,28 @@
+package ru.practicum.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.replica")
+public class ReplicaProperties {
+    /*чтение статистики с реплик; запись всегда в spring.datasource*/
+    private boolean enabled = false;
+    private List<String> urls = new ArrayList<>();
+    /*по умолчанию - как у spring.datasource*/
+    private String username;
+    private String password;
+    private int maximumPoolSize = 10;
+    /*недоступная реплика не должна надолго задерживать запрос, после таймаута чтение уходит в основную БД*/
+    private Duration connectionTimeout = Duration.ofSeconds(1);
+    private Duration healthCheckInterval = Duration.ofSeconds(5);
+    private Duration healthCheckTimeout = Duration.ofSeconds(2);
+    /*реплика, отстающая больше maxLag, в чтении не участвует; столько же ответы /stats считаются живыми в кэше*/
+    private Duration maxLag = Duration.ofSeconds(30);
+}
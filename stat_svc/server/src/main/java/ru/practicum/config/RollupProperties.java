@@ -0,0 +1,13 @@
+package ru.practicum.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.rollup")
+public class RollupProperties {
+    /*отвечать на неуникальные /stats из поминутных/почасовых/посуточных агрегатов*/
+    private boolean enabled = true;
+}
@@ -0,0 +1,22 @@
+package ru.practicum.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.cache")
+public class StatsCacheProperties {
+    /*выключен по умолчанию: ответы по закрытым диапазонам не видят опоздавших запросов других экземпляров*/
+    private boolean enabled = false;
+    private long maximumSize = 10_000;
+    /*диапазон, заканчивающийся в текущей корзине или позже, считается живым*/
+    private Duration bucket = Duration.ofMinutes(1);
+    /*диапазоны, заходящие в текущую корзину, еще пополняются*/
+    private Duration liveTtl = Duration.ofSeconds(5);
+    /*закрытые диапазоны меняются только из-за запросов, пришедших с опозданием*/
+    private Duration closedTtl = Duration.ofHours(1);
+}
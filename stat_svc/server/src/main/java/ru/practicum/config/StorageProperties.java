@@ -0,0 +1,15 @@
+package ru.practicum.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.storage")
+public class StorageProperties {
+    /*JDBC - запросы /stats к БД, COLUMNAR - к колоночным сегментам на локальном диске (только для одного экземпляра)*/
+    private StorageBackend backend = StorageBackend.JDBC;
+    private String directory = "columnar";
+    private int segmentRows = 100_000;
+}
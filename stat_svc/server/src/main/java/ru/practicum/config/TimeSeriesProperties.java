@@ -0,0 +1,13 @@
+package ru.practicum.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.timeseries")
+public class TimeSeriesProperties {
+    /*ограничение числа корзин в одном запросе /stats/timeseries*/
+    private long maxBuckets = 10_000;
+}
@@ -0,0 +1,19 @@
+package ru.practicum.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.top")
+public class TopProperties {
+    /*счетчиков в сводке одной корзины, ограничивает и максимальный n*/
+    private int capacity = 256;
+    /*сколько хранятся сводки каждой гранулярности, более старые корзины считаются по агрегатам в БД*/
+    private Duration minuteRetention = Duration.ofHours(3);
+    private Duration hourRetention = Duration.ofDays(3);
+    private Duration dayRetention = Duration.ofDays(400);
+}
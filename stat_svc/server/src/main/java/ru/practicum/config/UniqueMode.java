@@ -0,0 +1,6 @@
+package ru.practicum.config;
+
+public enum UniqueMode {
+    EXACT,
+    APPROXIMATE
+}
@@ -0,0 +1,14 @@
+package ru.practicum.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.unique")
+public class UniqueProperties {
+    /*EXACT - count(DISTINCT ip) по сырым hits, APPROXIMATE - объединение скетчей HyperLogLog (ошибка ~1.6%)*/
+    private UniqueMode mode = UniqueMode.EXACT;
+    private int backfillBatchSize = 1000;
+}
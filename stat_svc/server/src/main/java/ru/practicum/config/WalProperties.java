@@ -0,0 +1,22 @@
+package ru.practicum.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "stats.wal")
+public class WalProperties {
+    /*журнал используется в режиме stats.ingest.mode=WAL*/
+    private String directory = "wal";
+    private DataSize segmentSize = DataSize.ofMegabytes(64);
+    /*при заполнении (например, пока недоступна БД) новые запросы отклоняются*/
+    private DataSize maxSize = DataSize.ofGigabytes(1);
+    /*false - подтверждение без сброса на диск: журнал переживает падение JVM, но не ОС*/
+    private boolean fsync = true;
+    private Duration retryInterval = Duration.ofSeconds(1);
+}
@@ -2,21 +2,41 @@ package ru.practicum.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import ru.practicum.dto.BulkHitsResponse;
 import ru.practicum.dto.EndpointHitDto;
 import ru.practicum.dto.EndpointStats;
+import ru.practicum.dto.EndpointTimeSeries;
+import ru.practicum.dto.ExportParamDto;
+import ru.practicum.dto.IdViewsDto;
+import ru.practicum.dto.IdViewsQueryDto;
 import ru.practicum.dto.RequestParamDto;
+import ru.practicum.dto.StatsQueryDto;
+import ru.practicum.dto.TimeSeriesParamDto;
+import ru.practicum.dto.TopParamDto;
+import ru.practicum.model.ExportFormat;
+import ru.practicum.model.HitExportQuery;
 import ru.practicum.service.StatsService;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @Slf4j
 @RequiredArgsConstructor
 public class StatsController {
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    private static final int GZIP_BUFFER = 8192;
+
     private final StatsService statsService;
 
     @PostMapping("/hit")
@@ -26,13 +46,84 @@ public class StatsController {
         return new ResponseEntity<>("Информация сохранена", HttpStatus.CREATED);
     }
 
+    @PostMapping(value = "/hits", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<BulkHitsResponse> postHits(HttpServletRequest request) throws IOException {
+        BulkHitsResponse response = statsService.saveHits(request.getInputStream());
+        log.info("Statistic service: Выполнен запрос Post/hits, принято {}, отклонено {}", response.getAccepted(), response.getRejected());
+        return new ResponseEntity<>(response, HttpStatus.CREATED);
+    }
+
+    /*gzip включается заголовком Accept-Encoding*/
+    @GetMapping("/hits/export")
+    public void exportHits(@RequestParam(name = "format", defaultValue = "ndjson") String format,
+                           @RequestParam(name = "after", required = false) Long after,
+                           @RequestParam(name = "start", required = false) String start,
+                           @RequestParam(name = "end", required = false) String end,
+                           @RequestParam(name = "app", required = false) String app,
+                           @RequestParam(name = "uris", required = false) String[] uris,
+                           @RequestParam(name = "limit", required = false) Integer limit,
+                           @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                           HttpServletResponse response) throws IOException {
+        log.info("Statistic service: Выполняется запрос Get/hits/export в формате {} после id {}", format, after);
+        HitExportQuery query = statsService.prepareExport(new ExportParamDto(format, after, start, end, app, uris, limit));
+        response.setContentType(query.getFormat() == ExportFormat.CSV ? "text/csv" : APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            try (GZIPOutputStream out = new GZIPOutputStream(response.getOutputStream(), GZIP_BUFFER)) {
+                statsService.exportHits(query, out);
+            }
+        } else {
+            statsService.exportHits(query, response.getOutputStream());
+        }
+    }
+
     @GetMapping("/stats")
     public List<EndpointStats> getStats(@RequestParam(name = "start") String start,
                                         @RequestParam(name = "end") String end,
                                         @RequestParam(name = "uris", required = false) String[] uris,
-                                        @RequestParam(name = "unique", defaultValue = "false") boolean unique) {
+                                        @RequestParam(name = "unique", defaultValue = "false") boolean unique,
+                                        @RequestParam(name = "uniqueMode", required = false) String uniqueMode,
+                                        @RequestParam(name = "groupDepth", required = false) Integer groupDepth) {
         log.info("Statistic service:Выполняется запрос Get/stats для статистики эндпоинтов {}", uris);
-        RequestParamDto requestDto = new RequestParamDto(start, end, uris, unique);
+        RequestParamDto requestDto = new RequestParamDto(start, end, uris, unique, uniqueMode, groupDepth);
         return statsService.getStats(requestDto);
     }
-}
\ No newline at end of file
+
+    @PostMapping("/stats/query")
+    public List<EndpointStats> queryStats(@Valid @RequestBody StatsQueryDto query) {
+        log.info("Statistic service: Выполняется запрос Post/stats/query для {} эндпоинтов",
+                query.getUris() == null ? "всех" : query.getUris().size());
+        String[] uris = query.getUris() == null ? null : query.getUris().toArray(new String[0]);
+        return statsService.getStats(new RequestParamDto(query.getStart(), query.getEnd(), uris, query.isUnique(),
+                query.getUniqueMode(), query.getGroupDepth()));
+    }
+
+    @PostMapping("/stats/views")
+    public IdViewsDto getViews(@Valid @RequestBody IdViewsQueryDto query) {
+        log.info("Statistic service: Выполняется запрос Post/stats/views для {} id с префиксом {}",
+                query.getIds().length, query.getPrefix());
+        return statsService.getViews(query);
+    }
+
+    @GetMapping("/stats/top")
+    public List<EndpointStats> getTop(@RequestParam(name = "n", defaultValue = "10") int n,
+                                      @RequestParam(name = "start") String start,
+                                      @RequestParam(name = "end") String end,
+                                      @RequestParam(name = "app", required = false) String app) {
+        log.info("Statistic service: Выполняется запрос Get/stats/top для {} самых посещаемых эндпоинтов", n);
+        return statsService.getTop(new TopParamDto(n, start, end, app));
+    }
+
+    @GetMapping("/stats/timeseries")
+    public List<EndpointTimeSeries> getTimeSeries(@RequestParam(name = "start") String start,
+                                                  @RequestParam(name = "end") String end,
+                                                  @RequestParam(name = "uris", required = false) String[] uris,
+                                                  @RequestParam(name = "granularity", defaultValue = "hour") String granularity,
+                                                  @RequestParam(name = "unique", defaultValue = "false") boolean unique,
+                                                  @RequestParam(name = "uniqueMode", required = false) String uniqueMode) {
+        log.info("Statistic service: Выполняется запрос Get/stats/timeseries по {} для эндпоинтов {}", granularity, uris);
+        return statsService.getTimeSeries(new TimeSeriesParamDto(start, end, uris, granularity, unique, uniqueMode));
+    }
+}
@@ -0,0 +1,42 @@
+package ru.practicum.datasource;
+
+import java.util.function.Supplier;
+
+/*Маршрут текущего потока: запросы, выполняемые внутри onReplica, берут соединение у реплики.
+Запись и всё остальное идет в основную БД*/
+public final class DataSourceRoute {
+    private static final ThreadLocal<Boolean> REPLICA = new ThreadLocal<>();
+
+    private DataSourceRoute() {
+    }
+
+    public static <T> T onReplica(Supplier<T> query) {
+        return call(true, query);
+    }
+
+    public static void onReplica(Runnable query) {
+        call(true, () -> {
+            query.run();
+            return null;
+        });
+    }
+
+    public static boolean isReplica() {
+        return Boolean.TRUE.equals(REPLICA.get());
+    }
+
+    /*для передачи маршрута в потоки пула*/
+    public static <T> T call(boolean replica, Supplier<T> query) {
+        Boolean previous = REPLICA.get();
+        REPLICA.set(replica);
+        try {
+            return query.get();
+        } finally {
+            if (previous == null) {
+                REPLICA.remove();
+            } else {
+                REPLICA.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package ru.practicum.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/*
+ * Соединения для чтения статистики (DataSourceRoute.onReplica) выдаются репликами по кругу, остальные - основной БД.
+ * Реплика, не выдавшая соединение или не прошедшая периодическую проверку, исключается до следующей успешной проверки;
+ * если доступных реплик нет, чтение идет в основную БД.
+ * Отставание ограничено maxLag: проверка запоминает позицию WAL основной БД и момент ее чтения, реплика, успевшая
+ * воспроизвести эту позицию, видит всё зафиксированное до этого момента. Реплика, которая не догоняла основную БД
+ * дольше maxLag, в чтении не участвует, пока не догонит.
+ * Метрики: hikaricp.* по пулам, stats.datasource.route (primary | replica | fallback), stats.datasource.replica.healthy,
+ * stats.datasource.replica.lag - секунд с момента, до которого реплика гарантированно догнала основную БД
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractDataSource implements MeterBinder, AutoCloseable {
+    private final HikariDataSource primary;
+    private final List<Replica> replicas;
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder primaryRoute = new LongAdder();
+    private final LongAdder replicaRoute = new LongAdder();
+    private final LongAdder fallbackRoute = new LongAdder();
+    private final int checkTimeoutSeconds;
+    private final long maxLagNanos;
+    private final ScheduledExecutorService healthChecker;
+
+    public ReplicaRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas, Duration checkInterval,
+                                    Duration checkTimeout, Duration maxLag) {
+        this.primary = primary;
+        this.replicas = replicas.stream().map(Replica::new).collect(Collectors.toList());
+        this.checkTimeoutSeconds = (int) Math.max(1, checkTimeout.getSeconds());
+        this.maxLagNanos = maxLag.toNanos();
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthChecker.scheduleWithFixedDelay(this::checkReplicas, 0, checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /*реестр метрик сам зависит от источников данных, поэтому метрики регистрируются после создания пулов*/
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        MicrometerMetricsTrackerFactory pools = new MicrometerMetricsTrackerFactory(registry);
+        primary.setMetricsTrackerFactory(pools);
+        route(registry, "primary", primaryRoute);
+        route(registry, "replica", replicaRoute);
+        route(registry, "fallback", fallbackRoute);
+        for (Replica replica : replicas) {
+            replica.dataSource.setMetricsTrackerFactory(pools);
+            Gauge.builder("stats.datasource.replica.healthy", replica, r -> r.healthy ? 1 : 0)
+                    .tag("pool", replica.dataSource.getPoolName())
+                    .register(registry);
+            Gauge.builder("stats.datasource.replica.lag", replica, r -> (System.nanoTime() - r.caughtUpNanos) / 1e9)
+                    .tag("pool", replica.dataSource.getPoolName())
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!DataSourceRoute.isReplica() || replicas.isEmpty()) {
+            primaryRoute.increment();
+            return primary.getConnection();
+        }
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (!replica.healthy || System.nanoTime() - replica.caughtUpNanos > maxLagNanos) {
+                continue;
+            }
+            try {
+                Connection connection = replica.dataSource.getConnection();
+                replicaRoute.increment();
+                return connection;
+            } catch (SQLException e) {
+                markDown(replica, e.getMessage());
+            }
+        }
+        fallbackRoute.increment();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLException("Соединение с другими учетными данными не поддерживается");
+    }
+
+    @Override
+    public void close() {
+        healthChecker.shutdownNow();
+        replicas.forEach(replica -> replica.dataSource.close());
+        primary.close();
+    }
+
+    private void checkReplicas() {
+        long checkedNanos = System.nanoTime();
+        String primaryLsn = primaryLsn();
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection()) {
+                if (!connection.isValid(checkTimeoutSeconds)) {
+                    markDown(replica, "соединение не прошло проверку");
+                    continue;
+                }
+                if (!replica.healthy) {
+                    replica.healthy = true;
+                    log.info("Statistic service: реплика {} снова доступна", replica.dataSource.getPoolName());
+                }
+                if (primaryLsn != null && hasReplayed(connection, primaryLsn)) {
+                    replica.caughtUpNanos = checkedNanos;
+                    replica.lagging = false;
+                } else if (!replica.lagging && System.nanoTime() - replica.caughtUpNanos > maxLagNanos) {
+                    replica.lagging = true;
+                    log.warn("Statistic service: реплика {} отстает больше {}, чтение идет в основную БД",
+                            replica.dataSource.getPoolName(), Duration.ofNanos(maxLagNanos));
+                }
+            } catch (SQLException e) {
+                markDown(replica, e.getMessage());
+            }
+        }
+    }
+
+    /*null, если основная БД недоступна: отставание реплик тогда не подтверждается*/
+    private String primaryLsn() {
+        try (Connection connection = primary.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT pg_current_wal_lsn()::text")) {
+            return rs.next() ? rs.getString(1) : null;
+        } catch (SQLException e) {
+            log.warn("Statistic service: не удалось прочитать позицию WAL основной БД: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /*не находящаяся в восстановлении БД (pg_last_wal_replay_lsn() = NULL) сама является основной*/
+    private static boolean hasReplayed(Connection connection, String lsn) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT pg_last_wal_replay_lsn() IS NULL OR pg_last_wal_replay_lsn() >= ?::pg_lsn")) {
+            statement.setString(1, lsn);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private void markDown(Replica replica, String reason) {
+        if (replica.healthy) {
+            replica.healthy = false;
+            log.warn("Statistic service: реплика {} исключена из чтения: {}", replica.dataSource.getPoolName(), reason);
+        }
+    }
+
+    private static void route(MeterRegistry registry, String target, LongAdder count) {
+        FunctionCounter.builder("stats.datasource.route", count, LongAdder::sum).tag("target", target).register(registry);
+    }
+
+    private static class Replica {
+        private final HikariDataSource dataSource;
+        private volatile boolean healthy = true;
+        /*до первой проверки отставание неизвестно и реплика не используется*/
+        private volatile long caughtUpNanos = System.nanoTime() - Long.MAX_VALUE / 2;
+        private volatile boolean lagging;
+
+        Replica(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+    }
+}
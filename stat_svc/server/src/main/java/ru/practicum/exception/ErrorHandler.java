@@ -1,9 +1,12 @@
 package ru.practicum.exception;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import ru.practicum.dto.BulkHitsResponse;
 
 @RestControllerAdvice
 public class ErrorHandler {
@@ -19,4 +22,37 @@ public class ErrorHandler {
     public ErrorResponse handleNotFoundException(final NotFoundException e) {
         return new ErrorResponse(e.getMessage());
     }
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE) //503
+    public ErrorResponse handleIngestOverloadException(final IngestOverloadException e) {
+        return new ErrorResponse(e.getMessage());
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ErrorResponse> handleIngestRejectedException(final IngestRejectedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS) //429
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new ErrorResponse(e.getMessage()));
+    }
+
+    /*статус - как у причины, в теле уже записанная часть*/
+    @ExceptionHandler
+    public ResponseEntity<BulkHitsResponse> handleHitsLoadException(final HitsLoadException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IngestRejectedException) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS) //429
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(((IngestRejectedException) cause).getRetryAfterSeconds()))
+                    .body(e.getPartial());
+        }
+        HttpStatus status;
+        if (cause instanceof IngestOverloadException) {
+            status = HttpStatus.SERVICE_UNAVAILABLE; //503
+        } else if (cause instanceof ValidationException) {
+            status = HttpStatus.BAD_REQUEST; //400
+        } else {
+            status = HttpStatus.INTERNAL_SERVER_ERROR; //500
+        }
+        return ResponseEntity.status(status).body(e.getPartial());
+    }
 }
@@ -0,0 +1,17 @@
+package ru.practicum.exception;
+
+import ru.practicum.dto.BulkHitsResponse;
+
+/*Загрузка /hits прервана; partial - что уже записано, в том числе processed - с какой записи тела повторять*/
+public class HitsLoadException extends RuntimeException {
+    private final BulkHitsResponse partial;
+
+    public HitsLoadException(BulkHitsResponse partial, RuntimeException cause) {
+        super(cause.getMessage(), cause);
+        this.partial = partial;
+    }
+
+    public BulkHitsResponse getPartial() {
+        return partial;
+    }
+}
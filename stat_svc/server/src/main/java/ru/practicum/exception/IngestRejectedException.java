@@ -0,0 +1,15 @@
+package ru.practicum.exception;
+
+/*Запрос не принят из-за перегрузки, клиенту стоит повторить его через retryAfterSeconds*/
+public class IngestRejectedException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public IngestRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
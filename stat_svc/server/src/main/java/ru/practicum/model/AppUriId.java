@@ -0,0 +1,13 @@
+package ru.practicum.model;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+public class AppUriId {
+    private final int appId;
+    private final int uriId;
+}
@@ -0,0 +1,16 @@
+package ru.practicum.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/*Запрос в виде, в котором он хранится: id приложения и uri из словаря, IP - 16 байт*/
+@Getter
+@AllArgsConstructor
+public class EncodedHit {
+    private final int appId;
+    private final int uriId;
+    private final byte[] ip;
+    private final LocalDateTime timestamp;
+}
@@ -0,0 +1,6 @@
+package ru.practicum.model;
+
+public enum ExportFormat {
+    NDJSON,
+    CSV
+}
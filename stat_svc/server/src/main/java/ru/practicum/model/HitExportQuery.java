@@ -0,0 +1,21 @@
+package ru.practicum.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/*Проверенные параметры выгрузки, null - без фильтра*/
+@Getter
+@AllArgsConstructor
+public class HitExportQuery {
+    private final ExportFormat format;
+    private final long after;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+    private final Integer appId;
+    private final int[] uriIds;
+    private final Integer limit;
+    /*фильтр по app или uri, которых нет в словаре: результат заведомо пуст*/
+    private final boolean empty;
+}
@@ -0,0 +1,12 @@
+package ru.practicum.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class IdStats {
+    private final int appId;
+    private final int uriId;
+    private final long hits;
+}
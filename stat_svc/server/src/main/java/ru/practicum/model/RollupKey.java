@@ -0,0 +1,28 @@
+package ru.practicum.model;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+public class RollupKey implements Comparable<RollupKey> {
+    private static final Comparator<RollupKey> ORDER = Comparator.comparing(RollupKey::getGranularity)
+            .thenComparing(RollupKey::getBucketStart)
+            .thenComparingInt(RollupKey::getAppId)
+            .thenComparingInt(RollupKey::getUriId);
+
+    private final Granularity granularity;
+    private final LocalDateTime bucketStart;
+    private final int appId;
+    private final int uriId;
+
+    @Override
+    public int compareTo(RollupKey other) {
+        return ORDER.compare(this, other);
+    }
+}
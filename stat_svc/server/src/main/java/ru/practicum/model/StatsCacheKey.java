@@ -0,0 +1,21 @@
+package ru.practicum.model;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import ru.practicum.config.UniqueMode;
+
+import java.time.LocalDateTime;
+
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+public class StatsCacheKey {
+    private final LocalDateTime start;
+    private final LocalDateTime end;
+    /*отсортированные id, null - без фильтра*/
+    private final int[] uriIds;
+    /*null для неуникальных запросов*/
+    private final UniqueMode uniqueMode;
+    private final boolean live;
+}
@@ -0,0 +1,14 @@
+package ru.practicum.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/*полуинтервал [from, to)*/
+@Getter
+@AllArgsConstructor
+public class TimeRange {
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+}
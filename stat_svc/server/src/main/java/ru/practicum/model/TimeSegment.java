@@ -0,0 +1,21 @@
+package ru.practicum.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/*Полуинтервал [from, to): из агрегатов заданной гранулярности или, если granularity == null, из сырых hits*/
+@Getter
+@AllArgsConstructor
+@ToString
+public class TimeSegment {
+    private final Granularity granularity;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+
+    public boolean isRaw() {
+        return granularity == null;
+    }
+}
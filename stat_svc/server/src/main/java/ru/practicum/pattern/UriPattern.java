@@ -0,0 +1,66 @@
+package ru.practicum.pattern;
+
+import ru.practicum.exception.ValidationException;
+
+import java.util.regex.Pattern;
+
+/*
+ * Шаблон uri по сегментам пути: '*' - любые символы внутри одного сегмента, '**' (целый сегмент) - любое число сегментов.
+ * /events/* - /events/1, но не /events/1/comments; /events/** - все uri под /events; /events/1* - /events/1, /events/15.
+ */
+public class UriPattern {
+    private static final Pattern ANY_DEPTH = Pattern.compile("");
+
+    /*для каждого сегмента: null - литерал, ANY_DEPTH - '**', иначе регулярное выражение сегмента*/
+    private final String[] literals;
+    private final Pattern[] globs;
+
+    private UriPattern(String[] literals, Pattern[] globs) {
+        this.literals = literals;
+        this.globs = globs;
+    }
+
+    public static boolean isPattern(String uri) {
+        return uri.indexOf('*') >= 0;
+    }
+
+    public static UriPattern compile(String pattern) {
+        String[] segments = UriTrie.split(pattern);
+        String[] literals = new String[segments.length];
+        Pattern[] globs = new Pattern[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.equals("**")) {
+                globs[i] = ANY_DEPTH;
+            } else if (segment.contains("**")) {
+                throw new ValidationException("'**' должен занимать весь сегмент шаблона: " + pattern);
+            } else if (isPattern(segment)) {
+                String[] parts = segment.split("\\*", -1);
+                StringBuilder regex = new StringBuilder(Pattern.quote(parts[0]));
+                for (int j = 1; j < parts.length; j++) {
+                    regex.append(".*").append(Pattern.quote(parts[j]));
+                }
+                globs[i] = Pattern.compile(regex.toString());
+            } else {
+                literals[i] = segment;
+            }
+        }
+        return new UriPattern(literals, globs);
+    }
+
+    int length() {
+        return literals.length;
+    }
+
+    boolean isAnyDepth(int segment) {
+        return globs[segment] == ANY_DEPTH;
+    }
+
+    String getLiteral(int segment) {
+        return literals[segment];
+    }
+
+    boolean matches(int segment, String value) {
+        return globs[segment].matcher(value).matches();
+    }
+}
@@ -0,0 +1,74 @@
+package ru.practicum.pattern;
+
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*Префиксное дерево словаря uri по сегментам пути. Добавление и поиск можно выполнять одновременно*/
+public class UriTrie {
+    private final Node root = new Node();
+
+    /*"/events/1" -> ["", "events", "1"]; завершающий '/' дает пустой последний сегмент*/
+    static String[] split(String uri) {
+        return uri.split("/", -1);
+    }
+
+    public void add(String uri, int uriId) {
+        Node node = root;
+        for (String segment : split(uri)) {
+            node = node.children.computeIfAbsent(segment, s -> new Node());
+        }
+        node.uriId = uriId;
+    }
+
+    /*отсортированные id uri, подходящих под шаблон*/
+    public int[] find(UriPattern pattern) {
+        Set<Integer> result = new TreeSet<>();
+        find(root, pattern, 0, result, new IdentityHashMap<>());
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /*visited - номера сегментов '**', с которыми узел уже пройден: без этого несколько '**' дают экспоненциальный обход*/
+    private void find(Node node, UriPattern pattern, int segment, Set<Integer> result, Map<Node, BitSet> visited) {
+        if (segment == pattern.length()) {
+            if (node.uriId >= 0) {
+                result.add(node.uriId);
+            }
+            return;
+        }
+        if (pattern.isAnyDepth(segment)) {
+            BitSet segments = visited.computeIfAbsent(node, n -> new BitSet());
+            if (segments.get(segment)) {
+                return;
+            }
+            segments.set(segment);
+            /*'**' поглощает ноль сегментов или еще один сегмент и остается на месте*/
+            find(node, pattern, segment + 1, result, visited);
+            for (Node child : node.children.values()) {
+                find(child, pattern, segment, result, visited);
+            }
+            return;
+        }
+        String literal = pattern.getLiteral(segment);
+        if (literal != null) {
+            Node child = node.children.get(literal);
+            if (child != null) {
+                find(child, pattern, segment + 1, result, visited);
+            }
+            return;
+        }
+        for (Map.Entry<String, Node> child : node.children.entrySet()) {
+            if (pattern.matches(segment, child.getKey())) {
+                find(child.getValue(), pattern, segment + 1, result, visited);
+            }
+        }
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new ConcurrentHashMap<>();
+        private volatile int uriId = -1;
+    }
+}
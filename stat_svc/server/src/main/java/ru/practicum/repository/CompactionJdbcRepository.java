@@ -0,0 +1,34 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/*Состояние уплотнения: одна строка hit_compaction с границей сырых данных*/
+@Repository
+@RequiredArgsConstructor
+public class CompactionJdbcRepository {
+    private final JdbcTemplate jdbcTemplate;
+
+    public LocalDateTime findHorizon() {
+        return toLocalDateTime(jdbcTemplate.queryForObject("SELECT raw_horizon FROM hit_compaction WHERE id = 1",
+                Timestamp.class));
+    }
+
+    /*вызывается внутри транзакции: блокирует строку до ее конца, чтобы экземпляры сервиса не уплотняли одно и то же*/
+    public LocalDateTime lockHorizon() {
+        return toLocalDateTime(jdbcTemplate.queryForObject("SELECT raw_horizon FROM hit_compaction WHERE id = 1 FOR UPDATE",
+                Timestamp.class));
+    }
+
+    public void saveHorizon(LocalDateTime horizon) {
+        jdbcTemplate.update("UPDATE hit_compaction SET raw_horizon = ? WHERE id = 1", Timestamp.valueOf(horizon));
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toLocalDateTime();
+    }
+}
@@ -0,0 +1,52 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/*Словари hit_apps и hit_uris: строка хранится один раз, в hits и агрегатах - ее целочисленный id*/
+@Repository
+@RequiredArgsConstructor
+public class DictionaryJdbcRepository {
+    public static final String APPS = "hit_apps";
+    public static final String URIS = "hit_uris";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    /*колонки id, name*/
+    public void findAll(String table, RowCallbackHandler handler) {
+        jdbcTemplate.query("SELECT id, name FROM " + table, handler);
+    }
+
+    /*колонки id, name*/
+    public void findAfter(String table, int afterId, RowCallbackHandler handler) {
+        jdbcTemplate.query("SELECT id, name FROM " + table + " WHERE id > ?", handler, afterId);
+    }
+
+    public String findName(String table, int id) {
+        return jdbcTemplate.query("SELECT name FROM " + table + " WHERE id = ?",
+                rs -> rs.next() ? rs.getString(1) : null, id);
+    }
+
+    public Integer findId(String table, String name) {
+        return jdbcTemplate.query("SELECT id FROM " + table + " WHERE name = ?",
+                rs -> rs.next() ? rs.getInt(1) : null, name);
+    }
+
+    /*id всех найденных имен одним запросом с параметром-массивом; колонки id, name*/
+    public void findIds(String table, String[] names, RowCallbackHandler handler) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        SqlArrays.addTextArray(params, "names", names);
+        namedJdbcTemplate.query("SELECT id, name FROM " + table + " WHERE name = ANY(:names)", params, handler);
+    }
+
+    /*выполняется вне транзакции записи hits, чтобы выданный id был сразу зафиксирован*/
+    public int getOrCreate(String table, String name) {
+        jdbcTemplate.update("INSERT INTO " + table + " (name) VALUES (?) ON CONFLICT (name) DO NOTHING", name);
+        return findId(table, name);
+    }
+}
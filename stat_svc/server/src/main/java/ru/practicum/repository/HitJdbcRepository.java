@@ -0,0 +1,173 @@
+package ru.practicum.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.EncodedHit;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.HitExportQuery;
+import ru.practicum.model.IdStats;
+import ru.practicum.model.TimeSegment;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public class HitJdbcRepository {
+    private static final String INSERT_HIT = "INSERT INTO hits (app_id, uri_id, ip, timestamp) VALUES (?, ?, ?, ?)";
+    private static final String SELECT_HOURLY_IPS = "SELECT app_id, uri_id, date_trunc('hour', timestamp) AS bucket_start, ip " +
+            "FROM hits GROUP BY app_id, uri_id, bucket_start, ip ORDER BY app_id, uri_id, bucket_start";
+    private static final String SELECT_RANGE_HOURLY_IPS = "SELECT DISTINCT app_id, uri_id, " +
+            "date_trunc('hour', timestamp) AS bucket_start, ip FROM hits WHERE timestamp >= ? AND timestamp < ?";
+    private static final String SELECT_MISSING_ROLLUPS = "SELECT r.bucket_start, r.app_id, r.uri_id, " +
+            "r.hits - COALESCE(m.hits, 0) AS missing FROM (" +
+            "SELECT date_trunc('minute', timestamp) AS bucket_start, app_id, uri_id, COUNT(*) AS hits FROM hits " +
+            "WHERE timestamp >= ? AND timestamp < ? GROUP BY 1, 2, 3) r " +
+            "LEFT JOIN hit_rollups m ON m.granularity = 'MINUTE' AND m.bucket_start = r.bucket_start " +
+            "AND m.app_id = r.app_id AND m.uri_id = r.uri_id " +
+            "WHERE r.hits > COALESCE(m.hits, 0)";
+    private static final int FETCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    /*для построчного чтения курсором: с fetchSize драйвер Postgres не загружает весь результат в память*/
+    private final NamedParameterJdbcTemplate cursorJdbcTemplate;
+
+    public HitJdbcRepository(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        JdbcTemplate cursorTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        cursorTemplate.setFetchSize(FETCH_SIZE);
+        this.cursorJdbcTemplate = new NamedParameterJdbcTemplate(cursorTemplate);
+    }
+
+    public void saveAll(List<EncodedHit> hits) {
+        jdbcTemplate.batchUpdate(INSERT_HIT, hits, hits.size(), (ps, hit) -> {
+            ps.setInt(1, hit.getAppId());
+            ps.setInt(2, hit.getUriId());
+            ps.setBytes(3, hit.getIp());
+            ps.setTimestamp(4, Timestamp.valueOf(hit.getTimestamp()));
+        });
+    }
+
+    /*построчное чтение курсором в порядке id, для курсора Postgres вызывать внутри транзакции;
+    колонки id, app_id, uri_id, ip, timestamp*/
+    public void forEachHit(HitExportQuery query, RowCallbackHandler handler) {
+        MapSqlParameterSource params = new MapSqlParameterSource("after", query.getAfter());
+        StringBuilder sql = new StringBuilder("SELECT id, app_id, uri_id, ip, timestamp FROM hits WHERE id > :after");
+        if (query.getFrom() != null) {
+            sql.append(" AND timestamp >= :from");
+            params.addValue("from", Timestamp.valueOf(query.getFrom()));
+        }
+        if (query.getTo() != null) {
+            sql.append(" AND timestamp < :to");
+            params.addValue("to", Timestamp.valueOf(query.getTo()));
+        }
+        if (query.getAppId() != null) {
+            sql.append(" AND app_id = :app");
+            params.addValue("app", query.getAppId());
+        }
+        if (query.getUriIds() != null) {
+            sql.append(" AND uri_id = ANY(:uris)");
+            SqlArrays.addIntArray(params, "uris", query.getUriIds());
+        }
+        sql.append(" ORDER BY id");
+        if (query.getLimit() != null) {
+            sql.append(" LIMIT :limit");
+            params.addValue("limit", query.getLimit());
+        }
+        cursorJdbcTemplate.query(sql.toString(), params, handler);
+    }
+
+    /*точный подсчет по сырым hits, uriIds == null - без фильтра*/
+    public List<IdStats> getStats(LocalDateTime from, LocalDateTime toExclusive, int[] uriIds, boolean unique) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(toExclusive));
+        StringBuilder sql = new StringBuilder("SELECT app_id, uri_id, ")
+                .append(unique ? "COUNT(DISTINCT ip)" : "COUNT(*)")
+                .append(" AS hits FROM hits WHERE timestamp >= :from AND timestamp < :to");
+        if (uriIds != null) {
+            sql.append(" AND uri_id = ANY(:uris)");
+            SqlArrays.addIntArray(params, "uris", uriIds);
+        }
+        sql.append(" GROUP BY app_id, uri_id ORDER BY hits DESC");
+        return namedJdbcTemplate.query(sql.toString(), params,
+                (rs, rowNum) -> new IdStats(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getLong("hits")));
+    }
+
+    /*точное число уникальных IP по корзинам за один проход; колонки bucket, app_id, uri_id, hits*/
+    public void forEachUniqueTimeSeriesPoint(LocalDateTime from, LocalDateTime toExclusive, Granularity granularity,
+                                             int[] uriIds, RowCallbackHandler handler) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(toExclusive));
+        StringBuilder sql = new StringBuilder("SELECT date_trunc('")
+                .append(granularity.name().toLowerCase())
+                .append("', timestamp) AS bucket, app_id, uri_id, COUNT(DISTINCT ip) AS hits FROM hits " +
+                        "WHERE timestamp >= :from AND timestamp < :to");
+        if (uriIds != null) {
+            sql.append(" AND uri_id = ANY(:uris)");
+            SqlArrays.addIntArray(params, "uris", uriIds);
+        }
+        sql.append(" GROUP BY 1, 2, 3 ORDER BY app_id, uri_id, bucket");
+        namedJdbcTemplate.query(sql.toString(), params, handler);
+    }
+
+    /*поминутные счетчики сырых hits в [from, to), которых не хватает в агрегатах MINUTE;
+    колонки bucket_start, app_id, uri_id, missing*/
+    public void forEachMissingRollup(LocalDateTime from, LocalDateTime toExclusive, RowCallbackHandler handler) {
+        jdbcTemplate.query(SELECT_MISSING_ROLLUPS, handler, Timestamp.valueOf(from), Timestamp.valueOf(toExclusive));
+    }
+
+    /*колонки app_id, uri_id, bucket_start, ip*/
+    public void forEachHourlyDistinctIp(LocalDateTime from, LocalDateTime toExclusive, RowCallbackHandler handler) {
+        jdbcTemplate.query(SELECT_RANGE_HOURLY_IPS, handler, Timestamp.valueOf(from), Timestamp.valueOf(toExclusive));
+    }
+
+    /*самый ранний timestamp не раньше from, null - таких hits нет*/
+    public LocalDateTime findFirstTimestamp(LocalDateTime from) {
+        Timestamp first = from == null
+                ? jdbcTemplate.queryForObject("SELECT MIN(timestamp) FROM hits", Timestamp.class)
+                : jdbcTemplate.queryForObject("SELECT MIN(timestamp) FROM hits WHERE timestamp >= ?", Timestamp.class,
+                Timestamp.valueOf(from));
+        return first == null ? null : first.toLocalDateTime();
+    }
+
+    /*не больше limit строк за вызов, чтобы не держать долгих блокировок; возвращает число удаленных*/
+    public int deleteBefore(LocalDateTime toExclusive, int limit) {
+        return jdbcTemplate.update("DELETE FROM hits WHERE (id, timestamp) IN " +
+                "(SELECT id, timestamp FROM hits WHERE timestamp < ? LIMIT ?)", Timestamp.valueOf(toExclusive), limit);
+    }
+
+    /*для курсора Postgres вызывать внутри транзакции; колонки app_id, uri_id, bucket_start, ip*/
+    public void forEachHourlyDistinctIp(RowCallbackHandler handler) {
+        cursorJdbcTemplate.getJdbcOperations().query(SELECT_HOURLY_IPS, handler);
+    }
+
+    /*уникальные тройки (app_id, uri_id, ip) сырых hits в сегментах; колонки app_id, uri_id, ip*/
+    public void forEachDistinctIp(List<TimeSegment> segments, int[] uriIds, RowCallbackHandler handler) {
+        if (segments.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        StringBuilder sql = new StringBuilder("SELECT DISTINCT app_id, uri_id, ip FROM hits WHERE (");
+        for (int i = 0; i < segments.size(); i++) {
+            if (i > 0) {
+                sql.append(" OR ");
+            }
+            sql.append("(timestamp >= :from").append(i).append(" AND timestamp < :to").append(i).append(")");
+            params.addValue("from" + i, Timestamp.valueOf(segments.get(i).getFrom()));
+            params.addValue("to" + i, Timestamp.valueOf(segments.get(i).getTo()));
+        }
+        sql.append(")");
+        if (uriIds != null) {
+            sql.append(" AND uri_id = ANY(:uris)");
+            SqlArrays.addIntArray(params, "uris", uriIds);
+        }
+        namedJdbcTemplate.query(sql.toString(), params, handler);
+    }
+}
@@ -0,0 +1,54 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class PartitionJdbcRepository {
+    private static final String SELECT_PARTITIONS = "SELECT c.relname FROM pg_inherits i " +
+            "JOIN pg_class c ON c.oid = i.inhrelid " +
+            "JOIN pg_class p ON p.oid = i.inhparent " +
+            "WHERE p.relname = 'hits'";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<String> findPartitionNames() {
+        return jdbcTemplate.queryForList(SELECT_PARTITIONS, String.class);
+    }
+
+    /*если в секции по умолчанию уже есть строки из этого диапазона (например, перенесенные из старой таблицы),
+    они переносятся в новую секцию до ее подключения. Вставки в секцию по умолчанию ждут конца транзакции,
+    иначе строка из того же диапазона, вставленная после переноса, сорвала бы подключение. Вызывать внутри транзакции*/
+    public void createPartition(String name, LocalDateTime from, LocalDateTime to) {
+        Timestamp fromTs = Timestamp.valueOf(from);
+        Timestamp toTs = Timestamp.valueOf(to);
+        jdbcTemplate.execute("LOCK TABLE hits_default IN SHARE ROW EXCLUSIVE MODE");
+        Boolean hasDefaultRows = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM hits_default WHERE timestamp >= ? AND timestamp < ?)", Boolean.class, fromTs, toTs);
+        String bounds = " FOR VALUES FROM ('" + from + "') TO ('" + to + "')";
+        if (!Boolean.TRUE.equals(hasDefaultRows)) {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF hits" + bounds);
+            return;
+        }
+        jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE hits INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+        jdbcTemplate.update("WITH moved AS (DELETE FROM hits_default WHERE timestamp >= ? AND timestamp < ? RETURNING *) " +
+                "INSERT INTO " + name + " SELECT * FROM moved", fromTs, toTs);
+        jdbcTemplate.execute("ALTER TABLE hits ATTACH PARTITION " + name + bounds);
+    }
+
+    public void dropPartition(String name) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + name);
+    }
+
+    /*строки секции по умолчанию раньше toExclusive, не больше limit за вызов; возвращает число удаленных*/
+    public int deleteDefaultBefore(LocalDateTime toExclusive, int limit) {
+        return jdbcTemplate.update("DELETE FROM hits_default WHERE (id, timestamp) IN " +
+                "(SELECT id, timestamp FROM hits_default WHERE timestamp < ? LIMIT ?)", Timestamp.valueOf(toExclusive), limit);
+    }
+}
@@ -0,0 +1,162 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.IdStats;
+import ru.practicum.model.RollupKey;
+import ru.practicum.model.TimeSegment;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+@RequiredArgsConstructor
+public class RollupJdbcRepository {
+    private static final String UPSERT_ROLLUP = "INSERT INTO hit_rollups (granularity, bucket_start, app_id, uri_id, hits) " +
+            "VALUES (?, ?, ?, ?, ?) " +
+            "ON CONFLICT (granularity, bucket_start, app_id, uri_id) DO UPDATE SET hits = hit_rollups.hits + EXCLUDED.hits";
+
+    private static final String SELECT_BUCKETS = "SELECT bucket_start, app_id, uri_id, hits FROM hit_rollups " +
+            "WHERE granularity = ? AND bucket_start >= ?";
+    private static final int FETCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    /*ключи приходят отсортированными, чтобы параллельные транзакции блокировали строки в одном порядке*/
+    public void increment(Map<RollupKey, Long> increments) {
+        List<Map.Entry<RollupKey, Long>> entries = new ArrayList<>(increments.entrySet());
+        jdbcTemplate.batchUpdate(UPSERT_ROLLUP, entries, entries.size(), (ps, entry) -> {
+            RollupKey key = entry.getKey();
+            ps.setString(1, key.getGranularity().name());
+            ps.setTimestamp(2, Timestamp.valueOf(key.getBucketStart()));
+            ps.setInt(3, key.getAppId());
+            ps.setInt(4, key.getUriId());
+            ps.setLong(5, entry.getValue());
+        });
+    }
+
+    public List<IdStats> getStats(List<TimeSegment> segments, int[] uriIds) {
+        return getStats(segments, uriIds, null, null);
+    }
+
+    /*самые посещаемые (app, uri) в сегментах, appId == null - по всем приложениям*/
+    public List<IdStats> getTop(List<TimeSegment> segments, Integer appId, int limit) {
+        return getStats(segments, null, appId, limit);
+    }
+
+    /*счетчики по корзинам гранулярности granularity; сегменты не должны быть крупнее нее.
+    Колонки bucket, app_id, uri_id, hits, порядок app_id, uri_id, bucket*/
+    public void forEachTimeSeriesPoint(List<TimeSegment> segments, Granularity granularity, int[] uriIds,
+                                       RowCallbackHandler handler) {
+        if (segments.isEmpty()) {
+            return;
+        }
+        String unit = "'" + granularity.name().toLowerCase() + "'";
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        StringBuilder sql = new StringBuilder("SELECT bucket, app_id, uri_id, SUM(hits) AS hits FROM (");
+        for (int i = 0; i < segments.size(); i++) {
+            TimeSegment segment = segments.get(i);
+            if (i > 0) {
+                sql.append(" UNION ALL ");
+            }
+            if (segment.isRaw()) {
+                sql.append("SELECT date_trunc(").append(unit).append(", timestamp) AS bucket, app_id, uri_id, " +
+                        "COUNT(*) AS hits FROM hits WHERE timestamp >= :from").append(i)
+                        .append(" AND timestamp < :to").append(i);
+            } else {
+                sql.append("SELECT date_trunc(").append(unit).append(", bucket_start) AS bucket, app_id, uri_id, hits " +
+                        "FROM hit_rollups WHERE granularity = :g").append(i)
+                        .append(" AND bucket_start >= :from").append(i).append(" AND bucket_start < :to").append(i);
+                params.addValue("g" + i, segment.getGranularity().name());
+            }
+            if (uriIds != null) {
+                sql.append(" AND uri_id = ANY(:uris)");
+            }
+            if (segment.isRaw()) {
+                sql.append(" GROUP BY 1, 2, 3");
+            }
+            params.addValue("from" + i, Timestamp.valueOf(segment.getFrom()));
+            params.addValue("to" + i, Timestamp.valueOf(segment.getTo()));
+        }
+        sql.append(") s GROUP BY bucket, app_id, uri_id ORDER BY app_id, uri_id, bucket");
+        if (uriIds != null) {
+            SqlArrays.addIntArray(params, "uris", uriIds);
+        }
+        namedJdbcTemplate.query(sql.toString(), params, handler);
+    }
+
+    /*для курсора Postgres вызывать внутри транзакции; колонки bucket_start, app_id, uri_id, hits*/
+    public void forEachBucket(Granularity granularity, LocalDateTime from, RowCallbackHandler handler) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(SELECT_BUCKETS);
+            ps.setString(1, granularity.name());
+            ps.setTimestamp(2, Timestamp.valueOf(from));
+            ps.setFetchSize(FETCH_SIZE);
+            return ps;
+        }, handler);
+    }
+
+    /*корзины гранулярности granularity, начавшиеся раньше toExclusive, не больше limit за вызов; возвращает число удаленных*/
+    public int deleteBefore(Granularity granularity, LocalDateTime toExclusive, int limit) {
+        return jdbcTemplate.update("DELETE FROM hit_rollups WHERE (granularity, bucket_start, app_id, uri_id) IN " +
+                "(SELECT granularity, bucket_start, app_id, uri_id FROM hit_rollups " +
+                "WHERE granularity = ? AND bucket_start < ? LIMIT ?)", granularity.name(), Timestamp.valueOf(toExclusive), limit);
+    }
+
+    private List<IdStats> getStats(List<TimeSegment> segments, int[] uriIds, Integer appId, Integer limit) {
+        if (segments.isEmpty()) {
+            return new ArrayList<>();
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        StringBuilder sql = new StringBuilder("SELECT app_id, uri_id, SUM(hits) AS hits FROM (");
+        for (int i = 0; i < segments.size(); i++) {
+            TimeSegment segment = segments.get(i);
+            if (i > 0) {
+                sql.append(" UNION ALL ");
+            }
+            if (segment.isRaw()) {
+                sql.append("SELECT app_id, uri_id, COUNT(*) AS hits FROM hits " +
+                        "WHERE timestamp >= :from").append(i).append(" AND timestamp < :to").append(i);
+            } else {
+                sql.append("SELECT app_id, uri_id, hits FROM hit_rollups " +
+                        "WHERE granularity = :g").append(i)
+                        .append(" AND bucket_start >= :from").append(i).append(" AND bucket_start < :to").append(i);
+                params.addValue("g" + i, segment.getGranularity().name());
+            }
+            if (uriIds != null) {
+                sql.append(" AND uri_id = ANY(:uris)");
+            }
+            if (appId != null) {
+                sql.append(" AND app_id = :app");
+            }
+            if (segment.isRaw()) {
+                sql.append(" GROUP BY app_id, uri_id");
+            }
+            params.addValue("from" + i, Timestamp.valueOf(segment.getFrom()));
+            params.addValue("to" + i, Timestamp.valueOf(segment.getTo()));
+        }
+        sql.append(") s GROUP BY app_id, uri_id ORDER BY hits DESC");
+        if (uriIds != null) {
+            SqlArrays.addIntArray(params, "uris", uriIds);
+        }
+        if (appId != null) {
+            params.addValue("app", appId);
+        }
+        if (limit != null) {
+            sql.append(" LIMIT :limit");
+            params.addValue("limit", limit);
+        }
+        return namedJdbcTemplate.query(sql.toString(), params,
+                (rs, rowNum) -> new IdStats(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getLong("hits")));
+    }
+}
@@ -0,0 +1,148 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.AppUriId;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.RollupKey;
+import ru.practicum.model.TimeSegment;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+@Repository
+@RequiredArgsConstructor
+public class SketchJdbcRepository {
+    private static final int LOCK_CHUNK = 200;
+    private static final byte[] EMPTY_SKETCH = new HyperLogLog().toBytes();
+    private static final String INSERT_EMPTY = "INSERT INTO hit_sketches (granularity, bucket_start, app_id, uri_id, registers) " +
+            "VALUES (?, ?, ?, ?, ?) ON CONFLICT (granularity, bucket_start, app_id, uri_id) DO NOTHING";
+    private static final String UPDATE_SKETCH = "UPDATE hit_sketches SET registers = ? " +
+            "WHERE granularity = ? AND bucket_start = ? AND app_id = ? AND uri_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    /*вызывается внутри транзакции: строки блокируются в порядке ключей, объединяются со скетчами из пакета и перезаписываются*/
+    public void merge(SortedMap<RollupKey, HyperLogLog> sketches) {
+        List<RollupKey> keys = new ArrayList<>(sketches.keySet());
+        jdbcTemplate.batchUpdate(INSERT_EMPTY, keys, keys.size(), (ps, key) -> {
+            setKey(ps, 1, key);
+            ps.setBytes(5, EMPTY_SKETCH);
+        });
+
+        Map<RollupKey, HyperLogLog> merged = new HashMap<>();
+        for (int from = 0; from < keys.size(); from += LOCK_CHUNK) {
+            List<RollupKey> chunk = keys.subList(from, Math.min(keys.size(), from + LOCK_CHUNK));
+            StringBuilder sql = new StringBuilder("SELECT granularity, bucket_start, app_id, uri_id, registers FROM hit_sketches " +
+                    "WHERE (granularity, bucket_start, app_id, uri_id) IN (");
+            Object[] args = new Object[chunk.size() * 4];
+            for (int i = 0; i < chunk.size(); i++) {
+                RollupKey key = chunk.get(i);
+                sql.append(i == 0 ? "(?, ?, ?, ?)" : ", (?, ?, ?, ?)");
+                args[i * 4] = key.getGranularity().name();
+                args[i * 4 + 1] = Timestamp.valueOf(key.getBucketStart());
+                args[i * 4 + 2] = key.getAppId();
+                args[i * 4 + 3] = key.getUriId();
+            }
+            sql.append(") ORDER BY granularity, bucket_start, app_id, uri_id FOR UPDATE");
+            jdbcTemplate.query(sql.toString(), rs -> {
+                RollupKey key = new RollupKey(Granularity.valueOf(rs.getString("granularity")),
+                        rs.getTimestamp("bucket_start").toLocalDateTime(), rs.getInt("app_id"), rs.getInt("uri_id"));
+                merged.put(key, HyperLogLog.fromBytes(rs.getBytes("registers")).merge(sketches.get(key)));
+            }, args);
+        }
+
+        jdbcTemplate.batchUpdate(UPDATE_SKETCH, keys, keys.size(), (ps, key) -> {
+            ps.setBytes(1, merged.getOrDefault(key, sketches.get(key)).toBytes());
+            setKey(ps, 2, key);
+        });
+    }
+
+    public Map<AppUriId, HyperLogLog> getSketches(List<TimeSegment> segments, int[] uriIds) {
+        Map<AppUriId, HyperLogLog> result = new HashMap<>();
+        if (segments.isEmpty()) {
+            return result;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < segments.size(); i++) {
+            TimeSegment segment = segments.get(i);
+            if (i > 0) {
+                sql.append(" UNION ALL ");
+            }
+            sql.append("SELECT app_id, uri_id, registers FROM hit_sketches WHERE granularity = :g").append(i)
+                    .append(" AND bucket_start >= :from").append(i).append(" AND bucket_start < :to").append(i);
+            if (uriIds != null) {
+                sql.append(" AND uri_id = ANY(:uris)");
+            }
+            params.addValue("g" + i, segment.getGranularity().name());
+            params.addValue("from" + i, Timestamp.valueOf(segment.getFrom()));
+            params.addValue("to" + i, Timestamp.valueOf(segment.getTo()));
+        }
+        if (uriIds != null) {
+            SqlArrays.addIntArray(params, "uris", uriIds);
+        }
+        namedJdbcTemplate.query(sql.toString(), params, rs -> {
+            HyperLogLog sketch = HyperLogLog.fromBytes(rs.getBytes("registers"));
+            result.merge(new AppUriId(rs.getInt("app_id"), rs.getInt("uri_id")), sketch, HyperLogLog::merge);
+        });
+        return result;
+    }
+
+    /*скетчи одной гранулярности по корзинам; колонки bucket_start, app_id, uri_id, registers*/
+    public void forEachSketch(Granularity granularity, LocalDateTime from, LocalDateTime to, int[] uriIds,
+                              RowCallbackHandler handler) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("g", granularity.name())
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        StringBuilder sql = new StringBuilder("SELECT bucket_start, app_id, uri_id, registers FROM hit_sketches " +
+                "WHERE granularity = :g AND bucket_start >= :from AND bucket_start < :to");
+        if (uriIds != null) {
+            sql.append(" AND uri_id = ANY(:uris)");
+            SqlArrays.addIntArray(params, "uris", uriIds);
+        }
+        namedJdbcTemplate.query(sql.toString(), params, handler);
+    }
+
+    /*отметка в hit_sketch_backfill: скетчи построены по всем hits, записанным до начала их ведения*/
+    public boolean isBackfilled() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT completed FROM hit_sketch_backfill WHERE id = 1",
+                Boolean.class));
+    }
+
+    public void setBackfilled(boolean completed) {
+        jdbcTemplate.update("UPDATE hit_sketch_backfill SET completed = ? WHERE id = 1", completed);
+    }
+
+    public void deleteAll() {
+        jdbcTemplate.update("DELETE FROM hit_sketches");
+    }
+
+    /*корзины гранулярности granularity, начавшиеся раньше toExclusive, не больше limit за вызов; возвращает число удаленных*/
+    public int deleteBefore(Granularity granularity, LocalDateTime toExclusive, int limit) {
+        return jdbcTemplate.update("DELETE FROM hit_sketches WHERE (granularity, bucket_start, app_id, uri_id) IN " +
+                "(SELECT granularity, bucket_start, app_id, uri_id FROM hit_sketches " +
+                "WHERE granularity = ? AND bucket_start < ? LIMIT ?)", granularity.name(), Timestamp.valueOf(toExclusive), limit);
+    }
+
+    private void setKey(PreparedStatement ps, int first, RollupKey key) throws SQLException {
+        ps.setString(first, key.getGranularity().name());
+        ps.setTimestamp(first + 1, Timestamp.valueOf(key.getBucketStart()));
+        ps.setInt(first + 2, key.getAppId());
+        ps.setInt(first + 3, key.getUriId());
+    }
+}
@@ -0,0 +1,34 @@
+package ru.practicum.repository;
+
+import org.springframework.jdbc.core.support.AbstractSqlTypeValue;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+
+/*Список значений передается одним параметром-массивом (= ANY(:name)), а не раскрывается в IN (?, ?, ...):
+текст запроса не зависит от длины списка, и Postgres переиспользует подготовленный запрос*/
+final class SqlArrays {
+    private SqlArrays() {
+    }
+
+    static void addIntArray(MapSqlParameterSource params, String name, int[] values) {
+        params.addValue(name, new AbstractSqlTypeValue() {
+            @Override
+            protected Object createTypeValue(Connection con, int sqlType, String typeName) throws SQLException {
+                return con.createArrayOf("integer", Arrays.stream(values).boxed().toArray());
+            }
+        }, Types.ARRAY);
+    }
+
+    static void addTextArray(MapSqlParameterSource params, String name, String[] values) {
+        params.addValue(name, new AbstractSqlTypeValue() {
+            @Override
+            protected Object createTypeValue(Connection con, int sqlType, String typeName) throws SQLException {
+                return con.createArrayOf("varchar", values);
+            }
+        }, Types.ARRAY);
+    }
+}
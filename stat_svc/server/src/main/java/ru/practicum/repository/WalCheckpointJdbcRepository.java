@@ -0,0 +1,27 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+@RequiredArgsConstructor
+public class WalCheckpointJdbcRepository {
+    private static final String UPSERT = "INSERT INTO wal_checkpoints (log_id, position) VALUES (?, ?) " +
+            "ON CONFLICT (log_id) DO UPDATE SET position = EXCLUDED.position";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public Optional<Long> find(String logId) {
+        List<Long> positions = jdbcTemplate.queryForList("SELECT position FROM wal_checkpoints WHERE log_id = ?",
+                Long.class, logId);
+        return positions.stream().findFirst();
+    }
+
+    public void save(String logId, long position) {
+        jdbcTemplate.update(UPSERT, logId, position);
+    }
+}
@@ -0,0 +1,68 @@
+package ru.practicum.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.TimeSegment;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/*Разбивает полуинтервал [from, to) на самые крупные целиком покрытые корзины,
+сырые hits остаются только на неровных краях (меньше минуты с каждой стороны).
+Раньше границы сырых данных (RawHorizon) края берутся целой корзиной finest*/
+@Component
+@RequiredArgsConstructor
+public class BucketPlanner {
+    private final RawHorizon rawHorizon;
+
+    public List<TimeSegment> plan(LocalDateTime from, LocalDateTime to) {
+        return plan(from, to, Granularity.MINUTE);
+    }
+
+    /*finest - самая мелкая гранулярность, которая есть в хранилище (скетчи хранятся только почасово и посуточно)*/
+    public List<TimeSegment> plan(LocalDateTime from, LocalDateTime to, Granularity finest) {
+        List<TimeSegment> segments = new ArrayList<>();
+        decompose(from, to, Granularity.DAY, finest, segments);
+        LocalDateTime horizon = rawHorizon.get();
+        return horizon == null || !from.isBefore(horizon) ? segments : snapCompacted(segments, horizon, finest);
+    }
+
+    /*граница выровнена по часу, поэтому часть края до нее расширяется до корзин finest без пересечения с соседями*/
+    private List<TimeSegment> snapCompacted(List<TimeSegment> segments, LocalDateTime horizon, Granularity finest) {
+        List<TimeSegment> result = new ArrayList<>(segments.size() + 1);
+        for (TimeSegment segment : segments) {
+            if (!segment.isRaw() || !segment.getFrom().isBefore(horizon)) {
+                result.add(segment);
+                continue;
+            }
+            LocalDateTime compactedTo = segment.getTo().isBefore(horizon) ? segment.getTo() : horizon;
+            result.add(new TimeSegment(finest, finest.floor(segment.getFrom()), finest.ceil(compactedTo)));
+            if (horizon.isBefore(segment.getTo())) {
+                result.add(new TimeSegment(null, horizon, segment.getTo()));
+            }
+        }
+        return result;
+    }
+
+    private void decompose(LocalDateTime from, LocalDateTime to, Granularity granularity, Granularity finest,
+                           List<TimeSegment> segments) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        if (granularity == null || granularity.compareTo(finest) < 0) {
+            segments.add(new TimeSegment(null, from, to));
+            return;
+        }
+        LocalDateTime alignedFrom = granularity.ceil(from);
+        LocalDateTime alignedTo = granularity.floor(to);
+        if (alignedFrom.isBefore(alignedTo)) {
+            decompose(from, alignedFrom, granularity.finer(), finest, segments);
+            segments.add(new TimeSegment(granularity, alignedFrom, alignedTo));
+            decompose(alignedTo, to, granularity.finer(), finest, segments);
+        } else {
+            decompose(from, to, granularity.finer(), finest, segments);
+        }
+    }
+}
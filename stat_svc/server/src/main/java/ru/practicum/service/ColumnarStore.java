@@ -0,0 +1,199 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.columnar.ColumnarBuffer;
+import ru.practicum.columnar.ColumnarSegment;
+import ru.practicum.config.StorageBackend;
+import ru.practicum.config.StorageProperties;
+import ru.practicum.model.AppUriId;
+import ru.practicum.model.EncodedHit;
+import ru.practicum.model.HitExportQuery;
+import ru.practicum.model.IdStats;
+import ru.practicum.repository.HitJdbcRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/*Колоночное хранилище для stats.storage.backend=COLUMNAR: копия hits в неизменяемых сегментах на локальном диске
+плюс буфер последних записей в памяти. Хранилище производное: при аварийной остановке (нет отметки clean)
+буфер теряется, поэтому сегменты удаляются и строятся заново по таблице hits до начала приема запросов*/
+@Component
+@Slf4j
+public class ColumnarStore {
+    private static final String SUFFIX = ".col";
+    private static final String CLEAN = "clean";
+
+    private final StorageProperties properties;
+    private final HitJdbcRepository hitJdbcRepository;
+    private final TransactionTemplate readTransaction;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<ColumnarSegment> segments = new ArrayList<>();
+    private ColumnarBuffer buffer;
+    private long nextSegment;
+    private Path directory;
+    private volatile boolean enabled;
+
+    public ColumnarStore(StorageProperties properties, HitJdbcRepository hitJdbcRepository,
+                         PlatformTransactionManager transactionManager) {
+        this.properties = properties;
+        this.hitJdbcRepository = hitJdbcRepository;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (properties.getBackend() != StorageBackend.COLUMNAR) {
+            return;
+        }
+        directory = Paths.get(properties.getDirectory());
+        Files.createDirectories(directory);
+        buffer = new ColumnarBuffer(properties.getSegmentRows());
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(Comparator.naturalOrder());
+        Path clean = directory.resolve(CLEAN);
+        if (Files.deleteIfExists(clean)) {
+            for (Path file : files) {
+                segments.add(ColumnarSegment.open(file));
+            }
+            nextSegment = files.size();
+            log.info("Statistic service: колоночное хранилище открыто, сегментов {}", segments.size());
+        } else {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+            rebuild();
+        }
+        enabled = true;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            enabled = false;
+            seal();
+            Files.createFile(directory.resolve(CLEAN));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*вызывается после фиксации транзакции записи*/
+    public void record(List<EncodedHit> hits) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (EncodedHit hit : hits) {
+                add(hit.getAppId(), hit.getUriId(), hit.getTimestamp(), hit.getIp());
+            }
+        } catch (UncheckedIOException e) {
+            /*запросы /stats возвращаются к БД, хранилище перестроится при следующем запуске*/
+            enabled = false;
+            log.error("Statistic service: колоночное хранилище отключено", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*точный подсчет, в том числе уникальных IP; полуинтервал [from, to), uriIds == null - без фильтра*/
+    public List<IdStats> getStats(LocalDateTime from, LocalDateTime toExclusive, int[] uriIds, boolean unique) {
+        long fromSecond = toSecond(from);
+        long toSecond = toSecond(toExclusive);
+        int[] sortedUris = uriIds == null ? null : Arrays.stream(uriIds).sorted().toArray();
+        Map<AppUriId, Long> counts = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            if (unique) {
+                Map<AppUriId, Set<ByteBuffer>> ips = new HashMap<>();
+                for (ColumnarSegment segment : segments) {
+                    segment.collectIps(fromSecond, toSecond, sortedUris, ips);
+                }
+                buffer.collectIps(fromSecond, toSecond, sortedUris, ips);
+                ips.forEach((key, set) -> counts.put(key, (long) set.size()));
+            } else {
+                for (ColumnarSegment segment : segments) {
+                    segment.count(fromSecond, toSecond, sortedUris, counts);
+                }
+                buffer.count(fromSecond, toSecond, sortedUris, counts);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return counts.entrySet().stream()
+                .map(e -> new IdStats(e.getKey().getAppId(), e.getKey().getUriId(), e.getValue()))
+                .sorted(Comparator.comparingLong(IdStats::getHits).reversed())
+                .collect(Collectors.toList());
+    }
+
+    private void rebuild() {
+        HitExportQuery all = new HitExportQuery(null, 0, null, null, null, null, null, false);
+        long[] rows = {0};
+        readTransaction.executeWithoutResult(status -> hitJdbcRepository.forEachHit(all, rs -> {
+            add(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getTimestamp("timestamp").toLocalDateTime(),
+                    rs.getBytes("ip"));
+            rows[0]++;
+        }));
+        log.info("Statistic service: колоночное хранилище построено по {} записям, сегментов {}", rows[0], segments.size());
+    }
+
+    private void add(int appId, int uriId, LocalDateTime timestamp, byte[] ip) {
+        buffer.add(appId, uriId, toSecond(timestamp), IpCodec.toFixedLength(ip));
+        if (buffer.isFull()) {
+            try {
+                seal();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось сохранить сегмент колоночного хранилища", e);
+            }
+        }
+    }
+
+    private void seal() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        Path path = directory.resolve(String.format("%012d%s", nextSegment, SUFFIX));
+        segments.add(buffer.seal(path));
+        nextSegment++;
+        buffer = new ColumnarBuffer(properties.getSegmentRows());
+    }
+
+    /*время hits хранится без зоны, в колонках - секунды от эпохи как для UTC*/
+    private static long toSecond(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC);
+    }
+}
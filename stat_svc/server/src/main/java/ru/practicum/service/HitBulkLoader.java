@@ -0,0 +1,168 @@
+package ru.practicum.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.config.IngestProperties;
+import ru.practicum.dto.BulkHitsResponse;
+import ru.practicum.dto.EndpointHit;
+import ru.practicum.dto.EndpointHitDto;
+import ru.practicum.dto.EndpointHitMapper;
+import ru.practicum.dto.HitsBatchResult;
+import ru.practicum.exception.HitsLoadException;
+
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*Потоковый разбор тела /hits: JSON-массив или NDJSON читаются по одной записи,
+в памяти держится не больше одного пакета. Пакеты идут тем же путем, что и /hit (SYNC, ASYNC или WAL).
+При ошибке записи обработка прерывается, в ответе остается записанное и номер записи, с которой повторять*/
+@Component
+@Slf4j
+public class HitBulkLoader {
+    private final ObjectReader hitReader;
+    private final Validator validator;
+    private final HitWriter hitWriter;
+    private final HitIngestQueue hitIngestQueue;
+    private final HitWriteAheadLog hitWriteAheadLog;
+    private final IngestProperties properties;
+
+    public HitBulkLoader(ObjectMapper objectMapper, Validator validator, HitWriter hitWriter,
+                         HitIngestQueue hitIngestQueue, HitWriteAheadLog hitWriteAheadLog, IngestProperties properties) {
+        this.hitReader = objectMapper.readerFor(EndpointHitDto.class);
+        this.validator = validator;
+        this.hitWriter = hitWriter;
+        this.hitIngestQueue = hitIngestQueue;
+        this.hitWriteAheadLog = hitWriteAheadLog;
+        this.properties = properties;
+    }
+
+    public BulkHitsResponse load(InputStream body) throws IOException {
+        int batchSize = properties.getBatchSize();
+        BulkHitsResponse response = new BulkHitsResponse();
+        List<EndpointHit> batch = new ArrayList<>(batchSize);
+        /*номера записей тела для запросов пакета*/
+        List<Integer> records = new ArrayList<>(batchSize);
+        int rejected = 0;
+        int read = 0;
+
+        try (MappingIterator<EndpointHitDto> iterator = hitReader.readValues(body)) {
+            while (true) {
+                EndpointHitDto hitDto;
+                try {
+                    if (!iterator.hasNextValue()) {
+                        break;
+                    }
+                    hitDto = iterator.nextValue();
+                } catch (JsonMappingException e) {
+                    rejected++;
+                    read++;
+                    continue;
+                } catch (JsonProcessingException e) {
+                    log.warn("Statistic service: разбор /hits прерван, некорректный JSON: {}", e.getOriginalMessage());
+                    rejected++;
+                    read++;
+                    break;
+                }
+
+                EndpointHit hit = toValidHit(hitDto);
+                if (hit == null) {
+                    rejected++;
+                } else {
+                    batch.add(hit);
+                    records.add(read);
+                }
+                read++;
+                if (batch.size() + rejected >= batchSize) {
+                    flush(response, batch, records, rejected, read);
+                    rejected = 0;
+                }
+            }
+        }
+        if (!batch.isEmpty() || rejected > 0) {
+            flush(response, batch, records, rejected, read);
+        }
+        return response;
+    }
+
+    private EndpointHit toValidHit(EndpointHitDto hitDto) {
+        if (hitDto == null || !validator.validate(hitDto).isEmpty()) {
+            return null;
+        }
+        try {
+            return EndpointHitMapper.toHit(hitDto);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /*end - номер записи тела, следующей за пакетом*/
+    private void flush(BulkHitsResponse response, List<EndpointHit> batch, List<Integer> records, int rejected, int end) {
+        int[] written = {0};
+        try {
+            write(batch, written);
+        } catch (RuntimeException e) {
+            /*записанное начало пакета учитывается, повтор - с первого незаписанного запроса*/
+            int resumeAt = records.get(written[0]);
+            int skipped = resumeAt - response.getProcessed() - written[0];
+            addBatch(response, written[0], skipped, resumeAt);
+            response.setError(e.getMessage());
+            log.error("Statistic service: загрузка /hits прервана на записи {}: {}", resumeAt, e.getMessage());
+            throw new HitsLoadException(response, e);
+        } finally {
+            batch.clear();
+            records.clear();
+        }
+        addBatch(response, written[0], rejected, end);
+    }
+
+    /*written - сколько запросов с начала пакета уже принято тем же путем, что и /hit*/
+    private void write(List<EndpointHit> batch, int[] written) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        switch (properties.getMode()) {
+            case ASYNC:
+                for (EndpointHit hit : batch) {
+                    hitIngestQueue.enqueue(hit);
+                    written[0]++;
+                }
+                break;
+            case WAL:
+                /*пакет сбрасывается на диск одним вызовом, в том числе его начало перед ошибкой*/
+                long position = -1;
+                int appended = 0;
+                try {
+                    for (EndpointHit hit : batch) {
+                        position = hitWriteAheadLog.write(hit);
+                        appended++;
+                    }
+                } finally {
+                    if (position >= 0) {
+                        hitWriteAheadLog.sync(position);
+                        written[0] = appended;
+                    }
+                }
+                break;
+            case SYNC:
+            default:
+                hitWriter.write(batch);
+                written[0] = batch.size();
+        }
+    }
+
+    private void addBatch(BulkHitsResponse response, int accepted, int rejected, int processed) {
+        response.getBatches().add(new HitsBatchResult(response.getBatches().size() + 1, accepted, rejected));
+        response.setAccepted(response.getAccepted() + accepted);
+        response.setRejected(response.getRejected() + rejected);
+        response.setProcessed(processed);
+    }
+}
@@ -0,0 +1,170 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.config.CompactionProperties;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.RollupKey;
+import ru.practicum.repository.CompactionJdbcRepository;
+import ru.practicum.repository.HitJdbcRepository;
+import ru.practicum.repository.RollupJdbcRepository;
+import ru.practicum.repository.SketchJdbcRepository;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/*
+ * Уплотнение старых сырых hits. Агрегаты и скетчи пишутся вместе с hits, поэтому уплотнение сводится
+ * к переносу границы сырых данных (RawHorizon) почасовыми порциями и удалению hits раньше нее.
+ * Каждая порция - одна транзакция: строка hit_compaction блокируется, недостающие в агрегатах MINUTE
+ * поминутные счетчики (hits, записанные до появления агрегатов) доливаются во все гранулярности, граница сдвигается.
+ * Удаление идет отдельно короткими пакетами, поэтому прерванный прогон просто продолжается следующим.
+ * Hits, пришедшие позже с timestamp раньше границы, уже учтены в агрегатах при записи и удаляются следующим прогоном.
+ */
+@Component
+@Slf4j
+public class HitCompactor {
+    private final HitJdbcRepository hitJdbcRepository;
+    private final RollupJdbcRepository rollupJdbcRepository;
+    private final SketchJdbcRepository sketchJdbcRepository;
+    private final SketchService sketchService;
+    private final CompactionJdbcRepository compactionJdbcRepository;
+    private final RawHorizon rawHorizon;
+    private final CompactionProperties properties;
+    private final TransactionTemplate transactionTemplate;
+
+    public HitCompactor(HitJdbcRepository hitJdbcRepository, RollupJdbcRepository rollupJdbcRepository,
+                        SketchJdbcRepository sketchJdbcRepository, SketchService sketchService,
+                        CompactionJdbcRepository compactionJdbcRepository, RawHorizon rawHorizon,
+                        CompactionProperties properties, PlatformTransactionManager transactionManager) {
+        this.hitJdbcRepository = hitJdbcRepository;
+        this.rollupJdbcRepository = rollupJdbcRepository;
+        this.sketchJdbcRepository = sketchJdbcRepository;
+        this.sketchService = sketchService;
+        this.compactionJdbcRepository = compactionJdbcRepository;
+        this.rawHorizon = rawHorizon;
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(cron = "${stats.compaction.cron:0 */10 * * * *}")
+    public void compact() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        try {
+            rawHorizon.refresh();
+            deleteCompacted();
+            LocalDateTime cutoff = Granularity.HOUR.floor(LocalDateTime.now().minus(properties.getRawRetention()));
+            for (int i = 0; i < properties.getMaxChunksPerRun() && compactChunk(cutoff); i++) {
+                deleteCompacted();
+            }
+        } catch (DataAccessException e) {
+            log.error("Statistic service: уплотнение прервано, продолжится следующим прогоном: {}", e.getMessage());
+        }
+    }
+
+    /*false - уплотнять до cutoff больше нечего*/
+    private boolean compactChunk(LocalDateTime cutoff) {
+        LocalDateTime horizon = rawHorizon.get();
+        if (horizon != null && !horizon.isBefore(cutoff)) {
+            return false;
+        }
+        /*пустые периоды пропускаются целиком*/
+        LocalDateTime first = hitJdbcRepository.findFirstTimestamp(horizon);
+        LocalDateTime from = first == null ? cutoff : Granularity.HOUR.floor(first);
+        if (!from.isBefore(cutoff)) {
+            if (horizon != null) {
+                advance(horizon, null, cutoff);
+            }
+            return false;
+        }
+        long hours = Math.max(1, properties.getChunk().toHours());
+        LocalDateTime to = from.plusHours(hours).isBefore(cutoff) ? from.plusHours(hours) : cutoff;
+        return advance(horizon, from, to);
+    }
+
+    /*[from, to) доливается в агрегаты, граница переносится на to; false - границу уже сдвинул другой экземпляр*/
+    private boolean advance(LocalDateTime expected, LocalDateTime from, LocalDateTime to) {
+        long[] missing = {0};
+        Boolean advanced = transactionTemplate.execute(status -> {
+            LocalDateTime locked = compactionJdbcRepository.lockHorizon();
+            if (locked == null ? expected != null : !locked.equals(expected)) {
+                return false;
+            }
+            if (from != null) {
+                missing[0] = reconcile(from, to);
+            }
+            compactionJdbcRepository.saveHorizon(to);
+            return true;
+        });
+        if (!Boolean.TRUE.equals(advanced)) {
+            rawHorizon.refresh();
+            return false;
+        }
+        rawHorizon.set(to);
+        if (missing[0] > 0) {
+            log.info("Statistic service: при уплотнении до {} в агрегаты добавлено {} запросов", to, missing[0]);
+        }
+        return true;
+    }
+
+    /*скетчи часов с расхождениями пересобираются по всем IP порции, объединение идемпотентно*/
+    private long reconcile(LocalDateTime from, LocalDateTime to) {
+        Map<RollupKey, Long> increments = new TreeMap<>();
+        long[] missing = {0};
+        hitJdbcRepository.forEachMissingRollup(from, to, rs -> {
+            LocalDateTime minute = rs.getTimestamp("bucket_start").toLocalDateTime();
+            int app = rs.getInt("app_id");
+            int uri = rs.getInt("uri_id");
+            long count = rs.getLong("missing");
+            for (Granularity granularity : Granularity.values()) {
+                increments.merge(new RollupKey(granularity, granularity.floor(minute), app, uri), count, Long::sum);
+            }
+            missing[0] += count;
+        });
+        if (increments.isEmpty()) {
+            return 0;
+        }
+        rollupJdbcRepository.increment(increments);
+        if (sketchService.isEnabled()) {
+            SortedMap<RollupKey, HyperLogLog> sketches = new TreeMap<>();
+            hitJdbcRepository.forEachHourlyDistinctIp(from, to, rs -> {
+                int app = rs.getInt("app_id");
+                int uri = rs.getInt("uri_id");
+                long hash = HyperLogLog.hash(rs.getBytes("ip"));
+                LocalDateTime hour = rs.getTimestamp("bucket_start").toLocalDateTime();
+                sketches.computeIfAbsent(new RollupKey(Granularity.HOUR, hour, app, uri), k -> new HyperLogLog())
+                        .addHash(hash);
+                sketches.computeIfAbsent(new RollupKey(Granularity.DAY, Granularity.DAY.floor(hour), app, uri),
+                        k -> new HyperLogLog()).addHash(hash);
+            });
+            sketchJdbcRepository.merge(sketches);
+        }
+        return missing[0];
+    }
+
+    private void deleteCompacted() {
+        LocalDateTime horizon = rawHorizon.get();
+        if (horizon == null) {
+            return;
+        }
+        int batchSize = properties.getDeleteBatchSize();
+        long deleted = 0;
+        int batch;
+        do {
+            batch = hitJdbcRepository.deleteBefore(horizon, batchSize);
+            deleted += batch;
+        } while (batch == batchSize);
+        if (deleted > 0) {
+            log.info("Statistic service: удалено {} уплотненных запросов раньше {}", deleted, horizon);
+        }
+    }
+}
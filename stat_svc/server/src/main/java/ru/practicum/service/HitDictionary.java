@@ -0,0 +1,162 @@
+package ru.practicum.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.practicum.dto.EndpointStats;
+import ru.practicum.model.IdStats;
+import ru.practicum.pattern.UriPattern;
+import ru.practicum.pattern.UriTrie;
+import ru.practicum.repository.DictionaryJdbcRepository;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*Кэш словарей app/uri в обе стороны. Загружается целиком при старте,
+промахи (значения, добавленные другим экземпляром сервиса) добираются из БД.
+Для шаблонов uri поддерживается дерево uri, перед поиском по шаблону в него догружаются новые строки hit_uris*/
+@Component
+@RequiredArgsConstructor
+public class HitDictionary {
+    /*перечитываются и несколько последних известных id: id, выданный параллельной вставкой, может зафиксироваться позже большего*/
+    private static final int REFRESH_OVERLAP = 100;
+
+    private final DictionaryJdbcRepository dictionaryJdbcRepository;
+    private final Map<String, Integer> appIds = new ConcurrentHashMap<>();
+    private final Map<Integer, String> appNames = new ConcurrentHashMap<>();
+    private final Map<String, Integer> uriIds = new ConcurrentHashMap<>();
+    private final Map<Integer, String> uriNames = new ConcurrentHashMap<>();
+    private final UriTrie uriTrie = new UriTrie();
+    private int loadedUriId;
+
+    @PostConstruct
+    public void load() {
+        dictionaryJdbcRepository.findAll(DictionaryJdbcRepository.APPS,
+                rs -> put(rs.getString("name"), rs.getInt("id"), appIds, appNames));
+        dictionaryJdbcRepository.findAll(DictionaryJdbcRepository.URIS,
+                rs -> putTrie(rs.getString("name"), rs.getInt("id")));
+    }
+
+    public int getOrCreateAppId(String app) {
+        return getOrCreate(DictionaryJdbcRepository.APPS, app, appIds, appNames);
+    }
+
+    public int getOrCreateUriId(String uri) {
+        return getOrCreate(DictionaryJdbcRepository.URIS, uri, uriIds, uriNames);
+    }
+
+    public Integer findAppId(String app) {
+        return find(DictionaryJdbcRepository.APPS, app, appIds, appNames);
+    }
+
+    /*id известных uri; неизвестные uri пропускаются - по ним гарантированно нет ни одного запроса.
+    Промахи кэша добираются из БД одним запросом. Элементы с '*' - шаблоны (UriPattern)*/
+    public int[] findUriIds(String[] uris) {
+        List<String> missing = new ArrayList<>();
+        List<UriPattern> patterns = new ArrayList<>();
+        for (String uri : uris) {
+            if (UriPattern.isPattern(uri)) {
+                patterns.add(UriPattern.compile(uri));
+            } else if (!uriIds.containsKey(uri)) {
+                missing.add(uri);
+            }
+        }
+        if (!missing.isEmpty()) {
+            dictionaryJdbcRepository.findIds(DictionaryJdbcRepository.URIS, missing.toArray(new String[0]),
+                    rs -> put(rs.getString("name"), rs.getInt("id"), uriIds, uriNames));
+        }
+        int[] exact = Arrays.stream(uris)
+                .filter(uri -> !UriPattern.isPattern(uri))
+                .map(uriIds::get)
+                .filter(Objects::nonNull)
+                .mapToInt(Integer::intValue)
+                .distinct()
+                .toArray();
+        if (patterns.isEmpty()) {
+            return exact;
+        }
+        refreshTrie();
+        TreeSet<Integer> result = new TreeSet<>();
+        Arrays.stream(exact).forEach(result::add);
+        for (UriPattern pattern : patterns) {
+            Arrays.stream(uriTrie.find(pattern)).forEach(result::add);
+        }
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public String getApp(int appId) {
+        return getName(DictionaryJdbcRepository.APPS, appId, appIds, appNames);
+    }
+
+    public String getUri(int uriId) {
+        return getName(DictionaryJdbcRepository.URIS, uriId, uriIds, uriNames);
+    }
+
+    public Map<String, Integer> getUriIds() {
+        return uriIds;
+    }
+
+    public EndpointStats toEndpointStats(IdStats stats) {
+        return new EndpointStats(getApp(stats.getAppId()), getUri(stats.getUriId()), stats.getHits());
+    }
+
+    public List<EndpointStats> toEndpointStats(List<IdStats> stats) {
+        List<EndpointStats> result = new ArrayList<>(stats.size());
+        for (IdStats row : stats) {
+            result.add(toEndpointStats(row));
+        }
+        return result;
+    }
+
+    private int getOrCreate(String table, String name, Map<String, Integer> ids, Map<Integer, String> names) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = dictionaryJdbcRepository.getOrCreate(table, name);
+            put(name, id, ids, names);
+        }
+        return id;
+    }
+
+    private Integer find(String table, String name, Map<String, Integer> ids, Map<Integer, String> names) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = dictionaryJdbcRepository.findId(table, name);
+            if (id != null) {
+                put(name, id, ids, names);
+            }
+        }
+        return id;
+    }
+
+    private String getName(String table, int id, Map<String, Integer> ids, Map<Integer, String> names) {
+        String name = names.get(id);
+        if (name == null) {
+            name = dictionaryJdbcRepository.findName(table, id);
+            if (name != null) {
+                put(name, id, ids, names);
+            }
+        }
+        return name;
+    }
+
+    private synchronized void refreshTrie() {
+        dictionaryJdbcRepository.findAfter(DictionaryJdbcRepository.URIS, loadedUriId - REFRESH_OVERLAP,
+                rs -> putTrie(rs.getString("name"), rs.getInt("id")));
+    }
+
+    private void putTrie(String name, int id) {
+        put(name, id, uriIds, uriNames);
+        uriTrie.add(name, id);
+        loadedUriId = Math.max(loadedUriId, id);
+    }
+
+    private void put(String name, int id, Map<String, Integer> ids, Map<Integer, String> names) {
+        names.put(id, name);
+        ids.put(name, id);
+    }
+}
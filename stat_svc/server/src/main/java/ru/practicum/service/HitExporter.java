@@ -0,0 +1,149 @@
+package ru.practicum.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.dto.EndpointHit;
+import ru.practicum.dto.EndpointHitDto;
+import ru.practicum.dto.EndpointHitMapper;
+import ru.practicum.dto.ExportParamDto;
+import ru.practicum.exception.ValidationException;
+import ru.practicum.model.ExportFormat;
+import ru.practicum.model.HitExportQuery;
+import ru.practicum.repository.HitJdbcRepository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/*Выгрузка сырых hits курсором: строки пишутся в ответ по мере чтения, память не зависит от объема таблицы.
+Выгрузку можно продолжить с последнего полученного id (after)*/
+@Service
+public class HitExporter {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String CSV_HEADER = "id,app,uri,ip,timestamp";
+
+    private final HitJdbcRepository hitJdbcRepository;
+    private final HitDictionary hitDictionary;
+    private final ObjectWriter hitWriter;
+    private final TransactionTemplate readTransaction;
+
+    public HitExporter(HitJdbcRepository hitJdbcRepository, HitDictionary hitDictionary, ObjectMapper objectMapper,
+                       PlatformTransactionManager transactionManager) {
+        this.hitJdbcRepository = hitJdbcRepository;
+        this.hitDictionary = hitDictionary;
+        this.hitWriter = objectMapper.writerFor(EndpointHitDto.class);
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+    }
+
+    /*параметры проверяются до начала вывода, чтобы ошибка вернулась кодом 400, а не оборванным ответом*/
+    public HitExportQuery prepare(ExportParamDto params) {
+        ExportFormat format;
+        try {
+            format = ExportFormat.valueOf(params.getFormat().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Неизвестный формат выгрузки: " + params.getFormat());
+        }
+        LocalDateTime from = parse(params.getStart());
+        LocalDateTime end = parse(params.getEnd());
+        if (from != null && end != null && from.isAfter(end)) {
+            throw new ValidationException("Неправильно указано время для поиска!");
+        }
+        if (params.getLimit() != null && params.getLimit() <= 0) {
+            throw new ValidationException("Размер выгрузки должен быть положительным");
+        }
+
+        boolean empty = false;
+        Integer appId = null;
+        if (params.getApp() != null) {
+            appId = hitDictionary.findAppId(params.getApp());
+            empty = appId == null;
+        }
+        int[] uriIds = null;
+        if (params.getUris() != null) {
+            uriIds = hitDictionary.findUriIds(params.getUris());
+            empty = empty || uriIds.length == 0;
+        }
+        long after = params.getAfter() == null ? 0 : params.getAfter();
+        return new HitExportQuery(format, after, from, end == null ? null : end.plusSeconds(1), appId, uriIds,
+                params.getLimit(), empty);
+    }
+
+    public void export(HitExportQuery query, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (query.getFormat() == ExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+        if (!query.isEmpty()) {
+            try {
+                readTransaction.executeWithoutResult(status -> hitJdbcRepository.forEachHit(query, rs -> {
+                    EndpointHit hit = new EndpointHit();
+                    hit.setId(rs.getLong("id"));
+                    hit.setApp(hitDictionary.getApp(rs.getInt("app_id")));
+                    hit.setUri(hitDictionary.getUri(rs.getInt("uri_id")));
+                    hit.setIp(IpCodec.decode(rs.getBytes("ip")));
+                    hit.setTimestamp(rs.getTimestamp("timestamp").toLocalDateTime());
+                    try {
+                        write(writer, query.getFormat(), EndpointHitMapper.toDto(hit));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        writer.flush();
+    }
+
+    private void write(Writer writer, ExportFormat format, EndpointHitDto hit) throws IOException {
+        if (format == ExportFormat.NDJSON) {
+            try {
+                writer.write(hitWriter.writeValueAsString(hit));
+            } catch (JsonProcessingException e) {
+                throw new IOException(e);
+            }
+        } else {
+            writer.write(Long.toString(hit.getId()));
+            writer.write(',');
+            writer.write(csv(hit.getApp()));
+            writer.write(',');
+            writer.write(csv(hit.getUri()));
+            writer.write(',');
+            writer.write(csv(hit.getIp()));
+            writer.write(',');
+            writer.write(hit.getTimestamp());
+        }
+        writer.write('\n');
+    }
+
+    private String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private LocalDateTime parse(String time) {
+        if (time == null) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(time, TIME_FORMAT);
+        } catch (DateTimeParseException e) {
+            throw new ValidationException("Некорректный формат времени: " + time);
+        }
+    }
+}
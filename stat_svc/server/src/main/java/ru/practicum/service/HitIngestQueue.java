@@ -0,0 +1,220 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.config.IngestMode;
+import ru.practicum.config.IngestProperties;
+import ru.practicum.dto.EndpointHit;
+import ru.practicum.exception.IngestOverloadException;
+import ru.practicum.exception.IngestRejectedException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*Буфер запросов для режима ASYNC: /hit подтверждается сразу после постановки в очередь,
+фоновый поток пишет накопленное пакетами (по размеру пакета или по истечении flushInterval).
+Пакет, который не удалось записать, повторяется через writeRetryInterval; отбрасывается он только
+если БД недоступна и при остановке истек shutdownTimeout.
+Метрики: stats.ingest.queue.depth, stats.ingest.dropped (по причинам), stats.ingest.latency - от приема до записи в БД*/
+@Component
+@Slf4j
+public class HitIngestQueue {
+    private final IngestProperties properties;
+    private final HitWriter hitWriter;
+    private final BlockingQueue<QueuedHit> queue;
+    private final Counter droppedOldest;
+    private final Counter rejected;
+    private final Counter timedOut;
+    private final Counter failed;
+    private final Timer latency;
+    /*постановка в очередь (чтение) и остановка (запись) взаимно исключены: после running=false
+    новых запросов в очереди не появится, и последний проход писателя их не пропустит*/
+    private final ReadWriteLock stopLock = new ReentrantReadWriteLock();
+    private volatile boolean running;
+    private volatile boolean aborted;
+    private Thread writer;
+
+    public HitIngestQueue(IngestProperties properties, HitWriter hitWriter, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.hitWriter = hitWriter;
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        meterRegistry.gauge("stats.ingest.queue.depth", queue, BlockingQueue::size);
+        this.droppedOldest = dropped(meterRegistry, "drop_oldest");
+        this.rejected = dropped(meterRegistry, "rejected");
+        this.timedOut = dropped(meterRegistry, "timeout");
+        this.failed = dropped(meterRegistry, "write_failed");
+        this.latency = Timer.builder("stats.ingest.latency").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (properties.getMode() != IngestMode.ASYNC) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::runWriter, "hit-writer");
+        writer.start();
+        log.info("Statistic service: запущена асинхронная запись запросов, размер пакета {}, интервал {}, при переполнении {}",
+                properties.getBatchSize(), properties.getFlushInterval(), properties.getOverflowPolicy());
+    }
+
+    public void enqueue(EndpointHit hit) {
+        stopLock.readLock().lock();
+        try {
+            if (!running) {
+                throw new IngestOverloadException("Сервис статистики останавливается, запрос не принят");
+            }
+            offer(hit);
+        } finally {
+            stopLock.readLock().unlock();
+        }
+    }
+
+    private void offer(EndpointHit hit) {
+        QueuedHit queued = new QueuedHit(hit, System.nanoTime());
+        switch (properties.getOverflowPolicy()) {
+            case BLOCK:
+                boolean accepted;
+                try {
+                    accepted = queue.offer(queued, properties.getOfferTimeout().toNanos(), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    accepted = false;
+                }
+                if (!accepted) {
+                    timedOut.increment();
+                    throw reject();
+                }
+                break;
+            case DROP_OLDEST:
+                /*вытесненный запрос уже подтвержден клиенту, поэтому учитывается только в метрике*/
+                while (!queue.offer(queued)) {
+                    if (queue.poll() != null) {
+                        droppedOldest.increment();
+                    }
+                }
+                break;
+            case REJECT:
+            default:
+                if (!queue.offer(queued)) {
+                    rejected.increment();
+                    throw reject();
+                }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (writer == null) {
+            return;
+        }
+        stopLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            stopLock.writeLock().unlock();
+        }
+        try {
+            writer.join(properties.getShutdownTimeout().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        aborted = true;
+        if (!queue.isEmpty()) {
+            log.warn("Statistic service: при остановке не записано {} запросов", queue.size());
+        }
+    }
+
+    private IngestRejectedException reject() {
+        long seconds = Math.max(1, (properties.getRetryAfter().toMillis() + 999) / 1000);
+        return new IngestRejectedException("Буфер сервиса статистики переполнен, запрос не принят", seconds);
+    }
+
+    private void runWriter() {
+        int batchSize = properties.getBatchSize();
+        long flushIntervalNanos = properties.getFlushInterval().toNanos();
+        List<QueuedHit> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                QueuedHit first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    QueuedHit next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                queue.drainTo(batch, batchSize - batch.size());
+            }
+            flush(batch);
+        }
+    }
+
+    private void flush(List<QueuedHit> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<EndpointHit> hits = new ArrayList<>(batch.size());
+        for (QueuedHit queued : batch) {
+            hits.add(queued.hit);
+        }
+        /*запросы пакета уже подтверждены клиенту: пока идут повторы, очередь заполняется
+        и новые запросы ограничиваются политикой переполнения*/
+        while (true) {
+            try {
+                hitWriter.write(hits);
+                long now = System.nanoTime();
+                for (QueuedHit queued : batch) {
+                    latency.record(now - queued.acceptedNanos, TimeUnit.NANOSECONDS);
+                }
+                break;
+            } catch (RuntimeException e) {
+                if (aborted) {
+                    failed.increment(batch.size());
+                    log.error("Statistic service: при остановке не удалось записать пакет из {} запросов",
+                            batch.size(), e);
+                    break;
+                }
+                log.error("Statistic service: не удалось записать пакет из {} запросов, повтор через {}",
+                        batch.size(), properties.getWriteRetryInterval(), e);
+                LockSupport.parkNanos(properties.getWriteRetryInterval().toNanos());
+            }
+        }
+        batch.clear();
+    }
+
+    private static Counter dropped(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("stats.ingest.dropped").tag("reason", reason).register(meterRegistry);
+    }
+
+    private static class QueuedHit {
+        private final EndpointHit hit;
+        private final long acceptedNanos;
+
+        QueuedHit(EndpointHit hit, long acceptedNanos) {
+            this.hit = hit;
+            this.acceptedNanos = acceptedNanos;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.config.PartitionInterval;
+import ru.practicum.config.PartitionProperties;
+import ru.practicum.model.Granularity;
+import ru.practicum.repository.PartitionJdbcRepository;
+import ru.practicum.repository.RollupJdbcRepository;
+import ru.practicum.repository.SketchJdbcRepository;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntSupplier;
+
+/*Секции hits по дням или месяцам: заранее создает будущие секции и удаляет устаревшие целиком (без DELETE).
+Строки вне созданных секций (в т.ч. перенесенные из старой таблицы) остаются в hits_default: при создании секции
+строки ее диапазона переносятся в нее, устаревшие строки удаляются пакетами. Тот же срок хранения применяется
+к агрегатам и скетчам: удаляются корзины, целиком закончившиеся раньше границы, иначе запросы к уплотненному
+периоду продолжали бы считать удаленные hits. Ошибки только пишутся в лог, следующий прогон повторяет попытку*/
+@Component
+@Slf4j
+public class HitPartitionManager {
+    private static final String PREFIX = "hits_p";
+    private static final String DEFAULT_PARTITION = "hits_default";
+    private static final int DEFAULT_DELETE_BATCH = 5000;
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final PartitionJdbcRepository partitionJdbcRepository;
+    private final RollupJdbcRepository rollupJdbcRepository;
+    private final SketchJdbcRepository sketchJdbcRepository;
+    private final PartitionProperties properties;
+    private final TransactionTemplate transactionTemplate;
+
+    public HitPartitionManager(PartitionJdbcRepository partitionJdbcRepository, RollupJdbcRepository rollupJdbcRepository,
+                               SketchJdbcRepository sketchJdbcRepository, PartitionProperties properties,
+                               PlatformTransactionManager transactionManager) {
+        this.partitionJdbcRepository = partitionJdbcRepository;
+        this.rollupJdbcRepository = rollupJdbcRepository;
+        this.sketchJdbcRepository = sketchJdbcRepository;
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void init() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${stats.partition.maintenance-cron:0 5 * * * *}")
+    public void maintain() {
+        List<String> existing = partitionJdbcRepository.findPartitionNames();
+        Set<String> names = new HashSet<>(existing);
+
+        LocalDate current = intervalStart(LocalDate.now());
+        for (int i = 0; i <= properties.getPrecreate(); i++) {
+            LocalDate from = next(current, i);
+            String name = name(from);
+            if (names.contains(name)) {
+                continue;
+            }
+            try {
+                LocalDateTime to = next(from, 1).atStartOfDay();
+                transactionTemplate.executeWithoutResult(status ->
+                        partitionJdbcRepository.createPartition(name, from.atStartOfDay(), to));
+                log.info("Statistic service: создана секция {}", name);
+            } catch (DataAccessException e) {
+                log.error("Statistic service: не удалось создать секцию {}: {}", name, e.getMessage());
+            }
+        }
+
+        Duration retention = properties.getRetention();
+        if (retention.isZero() || retention.isNegative()) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minus(retention);
+        for (String name : existing) {
+            LocalDate from = parse(name);
+            if (from == null || next(from, 1).atStartOfDay().isAfter(cutoff)) {
+                continue;
+            }
+            try {
+                partitionJdbcRepository.dropPartition(name);
+                log.info("Statistic service: удалена устаревшая секция {}", name);
+            } catch (DataAccessException e) {
+                log.error("Statistic service: не удалось удалить секцию {}: {}", name, e.getMessage());
+            }
+        }
+        purge(DEFAULT_PARTITION, cutoff, () -> partitionJdbcRepository.deleteDefaultBefore(cutoff, DEFAULT_DELETE_BATCH));
+        for (Granularity granularity : Granularity.values()) {
+            /*корзина, начавшаяся раньше floor(cutoff), закончилась не позже cutoff*/
+            LocalDateTime bucketCutoff = granularity.floor(cutoff);
+            purge("hit_rollups " + granularity, bucketCutoff,
+                    () -> rollupJdbcRepository.deleteBefore(granularity, bucketCutoff, DEFAULT_DELETE_BATCH));
+            purge("hit_sketches " + granularity, bucketCutoff,
+                    () -> sketchJdbcRepository.deleteBefore(granularity, bucketCutoff, DEFAULT_DELETE_BATCH));
+        }
+    }
+
+    /*у секции по умолчанию и агрегатов нет секций по времени, поэтому устаревшие строки удаляются короткими пакетами*/
+    private void purge(String table, LocalDateTime cutoff, IntSupplier deleteBatch) {
+        long deleted = 0;
+        try {
+            int batch;
+            do {
+                batch = deleteBatch.getAsInt();
+                deleted += batch;
+            } while (batch == DEFAULT_DELETE_BATCH);
+        } catch (DataAccessException e) {
+            log.error("Statistic service: не удалось удалить устаревшие строки из {}: {}", table, e.getMessage());
+        }
+        if (deleted > 0) {
+            log.info("Statistic service: из {} удалено {} строк раньше {}", table, deleted, cutoff);
+        }
+    }
+
+    private LocalDate intervalStart(LocalDate date) {
+        return properties.getInterval() == PartitionInterval.DAY ? date : date.withDayOfMonth(1);
+    }
+
+    private LocalDate next(LocalDate from, int intervals) {
+        return properties.getInterval() == PartitionInterval.DAY ? from.plusDays(intervals) : from.plusMonths(intervals);
+    }
+
+    private String name(LocalDate from) {
+        return PREFIX + from.format(properties.getInterval() == PartitionInterval.DAY ? DAY_FORMAT : MONTH_FORMAT);
+    }
+
+    /*секции другой нарезки (после смены interval) не трогаем*/
+    private LocalDate parse(String name) {
+        if (!name.startsWith(PREFIX)) {
+            return null;
+        }
+        String suffix = name.substring(PREFIX.length());
+        if (properties.getInterval() == PartitionInterval.DAY && suffix.length() == 8) {
+            return LocalDate.parse(suffix, DAY_FORMAT);
+        }
+        if (properties.getInterval() == PartitionInterval.MONTH && suffix.length() == 6) {
+            return LocalDate.parse(suffix + "01", DAY_FORMAT);
+        }
+        return null;
+    }
+}
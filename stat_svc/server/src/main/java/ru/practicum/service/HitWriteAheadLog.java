@@ -0,0 +1,219 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import ru.practicum.config.IngestMode;
+import ru.practicum.config.IngestProperties;
+import ru.practicum.config.WalProperties;
+import ru.practicum.dto.EndpointHit;
+import ru.practicum.exception.IngestOverloadException;
+import ru.practicum.exception.ValidationException;
+import ru.practicum.repository.WalCheckpointJdbcRepository;
+import ru.practicum.wal.SegmentLog;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/*Режим WAL: /hit подтверждается после записи в журнал на диске, фоновый поток переносит журнал в БД пакетами.
+Контрольная точка (позиция в журнале) сохраняется в одной транзакции с пакетом, поэтому после перезапуска
+журнал переигрывается с нее без потерь и повторов. Пока БД недоступна, запросы копятся в журнале до stats.wal.max-size*/
+@Component
+@Slf4j
+public class HitWriteAheadLog {
+    private final IngestProperties ingestProperties;
+    private final WalProperties properties;
+    private final HitWriter hitWriter;
+    private final WalCheckpointJdbcRepository checkpointRepository;
+    private final MeterRegistry meterRegistry;
+    private SegmentLog segmentLog;
+    private volatile boolean running;
+    private volatile boolean aborted;
+    private volatile long checkpoint = -1;
+    private Thread mover;
+
+    public HitWriteAheadLog(IngestProperties ingestProperties, WalProperties properties, HitWriter hitWriter,
+                            WalCheckpointJdbcRepository checkpointRepository, MeterRegistry meterRegistry) {
+        this.ingestProperties = ingestProperties;
+        this.properties = properties;
+        this.hitWriter = hitWriter;
+        this.checkpointRepository = checkpointRepository;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (ingestProperties.getMode() != IngestMode.WAL) {
+            return;
+        }
+        segmentLog = SegmentLog.open(Paths.get(properties.getDirectory()), (int) properties.getSegmentSize().toBytes(),
+                properties.getMaxSize().toBytes(), properties.isFsync());
+        meterRegistry.gauge("stats.wal.backlog.bytes", this, HitWriteAheadLog::getBacklog);
+        running = true;
+        mover = new Thread(this::runMover, "hit-wal-mover");
+        mover.start();
+        log.info("Statistic service: запись запросов через журнал {}, конец журнала {}",
+                properties.getDirectory(), segmentLog.getWritten());
+    }
+
+    public void append(EndpointHit hit) {
+        sync(write(hit));
+    }
+
+    /*запись без ожидания сброса на диск; подтверждать запрос можно только после sync(позиция)*/
+    public long write(EndpointHit hit) {
+        if (!running) {
+            throw new IngestOverloadException("Сервис статистики останавливается, запрос не принят");
+        }
+        byte[] record = encode(hit);
+        if (record.length > segmentLog.getMaxRecordSize()) {
+            throw new ValidationException("Запрос слишком велик для журнала: " + record.length + " байт");
+        }
+        long position;
+        try {
+            position = segmentLog.append(record);
+        } catch (IOException e) {
+            log.error("Statistic service: не удалось записать запрос в журнал", e);
+            throw new IngestOverloadException("Журнал сервиса статистики недоступен, запрос не принят");
+        }
+        if (position < 0) {
+            throw new IngestOverloadException("Журнал сервиса статистики переполнен, запрос не принят");
+        }
+        return position;
+    }
+
+    /*возвращается, когда все записи до position на диске; пакет записей сбрасывается одним вызовом*/
+    public void sync(long position) {
+        try {
+            segmentLog.sync(position);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IngestOverloadException("Запись в журнал прервана, запрос не принят");
+        }
+    }
+
+    /*перенос в БД продолжается до опустошения журнала или shutdownTimeout, остаток переиграется при следующем запуске*/
+    @PreDestroy
+    public void stop() {
+        if (mover == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(mover);
+        try {
+            mover.join(ingestProperties.getShutdownTimeout().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        aborted = true;
+        segmentLog.close();
+        long backlog = getBacklog();
+        if (backlog > 0) {
+            log.warn("Statistic service: в журнале осталось {} байт, они будут перенесены в БД при следующем запуске", backlog);
+        }
+    }
+
+    private long getBacklog() {
+        long position = checkpoint;
+        return position < 0 ? 0 : Math.max(0, segmentLog.getWritten() - position);
+    }
+
+    private void runMover() {
+        String logId = segmentLog.getId();
+        long position = loadCheckpoint(logId);
+        int batchSize = ingestProperties.getBatchSize();
+        List<EndpointHit> batch = new ArrayList<>(batchSize);
+        while (position >= 0 && !aborted) {
+            long next = position;
+            SegmentLog.Entry entry;
+            while (batch.size() < batchSize && (entry = segmentLog.read(next)) != null) {
+                batch.add(decode(entry.getData()));
+                next = entry.getNext();
+            }
+            if (batch.isEmpty()) {
+                if (!running) {
+                    return;
+                }
+                LockSupport.parkNanos(ingestProperties.getFlushInterval().toNanos());
+                continue;
+            }
+            long end = next;
+            try {
+                hitWriter.write(batch, () -> checkpointRepository.save(logId, end));
+                position = end;
+                checkpoint = end;
+                segmentLog.deleteBefore(end);
+            } catch (IOException e) {
+                log.warn("Statistic service: не удалось удалить перенесенные сегменты журнала: {}", e.getMessage());
+            } catch (RuntimeException e) {
+                log.error("Statistic service: не удалось перенести в БД пакет из {} запросов, повтор через {}",
+                        batch.size(), properties.getRetryInterval(), e);
+                if (!running) {
+                    return;
+                }
+                LockSupport.parkNanos(properties.getRetryInterval().toNanos());
+            }
+            batch.clear();
+        }
+    }
+
+    /*-1, если сервис остановлен раньше, чем стала доступна БД*/
+    private long loadCheckpoint(String logId) {
+        while (running) {
+            try {
+                long position = checkpointRepository.find(logId).orElse(segmentLog.getStart());
+                checkpoint = position;
+                if (position < segmentLog.getWritten()) {
+                    log.info("Statistic service: переигрывание журнала с позиции {} до {}", position, segmentLog.getWritten());
+                }
+                return position;
+            } catch (DataAccessException e) {
+                log.warn("Statistic service: контрольная точка журнала недоступна, повтор через {}: {}",
+                        properties.getRetryInterval(), e.getMessage());
+                LockSupport.parkNanos(properties.getRetryInterval().toNanos());
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] encode(EndpointHit hit) {
+        byte[] app = hit.getApp().getBytes(StandardCharsets.UTF_8);
+        byte[] uri = hit.getUri().getBytes(StandardCharsets.UTF_8);
+        byte[] ip = hit.getIp().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(3 * Integer.BYTES + app.length + uri.length + ip.length
+                + Long.BYTES + Integer.BYTES);
+        buffer.putInt(app.length).put(app);
+        buffer.putInt(uri.length).put(uri);
+        buffer.putInt(ip.length).put(ip);
+        buffer.putLong(hit.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(hit.getTimestamp().getNano());
+        return buffer.array();
+    }
+
+    private static EndpointHit decode(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        EndpointHit hit = new EndpointHit();
+        hit.setApp(getString(buffer));
+        hit.setUri(getString(buffer));
+        hit.setIp(getString(buffer));
+        long seconds = buffer.getLong();
+        hit.setTimestamp(LocalDateTime.ofEpochSecond(seconds, buffer.getInt(), ZoneOffset.UTC));
+        return hit;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,91 @@
+package ru.practicum.service;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.dto.EndpointHit;
+import ru.practicum.model.EncodedHit;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.RollupKey;
+import ru.practicum.repository.HitJdbcRepository;
+import ru.practicum.repository.RollupJdbcRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*Единая точка записи: сырые hits, инкремент агрегатов и скетчей уникальных IP в одной транзакции,
+поэтому подтвержденный запрос сразу виден в агрегатах и не теряется при аварийной остановке.
+Ключи агрегатов сортируются, чтобы параллельные пакеты блокировали строки в одном порядке.
+id приложений и uri выдаются словарем до начала транзакции, чтобы откат пакета не оставлял в кэше несуществующих id*/
+@Service
+public class HitWriter {
+    private final HitJdbcRepository hitJdbcRepository;
+    private final RollupJdbcRepository rollupJdbcRepository;
+    private final SketchService sketchService;
+    private final HitDictionary hitDictionary;
+    private final HotCounters hotCounters;
+    private final StatsResultCache statsResultCache;
+    private final TopHitters topHitters;
+    private final ColumnarStore columnarStore;
+    private final TransactionTemplate transactionTemplate;
+
+    public HitWriter(HitJdbcRepository hitJdbcRepository, RollupJdbcRepository rollupJdbcRepository,
+                     SketchService sketchService, HitDictionary hitDictionary, HotCounters hotCounters,
+                     StatsResultCache statsResultCache, TopHitters topHitters, ColumnarStore columnarStore,
+                     PlatformTransactionManager transactionManager) {
+        this.hitJdbcRepository = hitJdbcRepository;
+        this.rollupJdbcRepository = rollupJdbcRepository;
+        this.sketchService = sketchService;
+        this.hitDictionary = hitDictionary;
+        this.hotCounters = hotCounters;
+        this.statsResultCache = statsResultCache;
+        this.topHitters = topHitters;
+        this.columnarStore = columnarStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public void write(List<EndpointHit> hits) {
+        write(hits, () -> {
+        });
+    }
+
+    /*inTransaction выполняется в транзакции пакета, например, для сохранения контрольной точки журнала*/
+    public void write(List<EndpointHit> hits, Runnable inTransaction) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        List<EncodedHit> encoded = encode(hits);
+        transactionTemplate.executeWithoutResult(status -> {
+            hitJdbcRepository.saveAll(encoded);
+
+            Map<RollupKey, Long> increments = new TreeMap<>();
+            for (EncodedHit hit : encoded) {
+                for (Granularity granularity : Granularity.values()) {
+                    RollupKey key = new RollupKey(granularity, granularity.floor(hit.getTimestamp()),
+                            hit.getAppId(), hit.getUriId());
+                    increments.merge(key, 1L, Long::sum);
+                }
+            }
+            rollupJdbcRepository.increment(increments);
+            if (sketchService.isEnabled()) {
+                sketchService.write(encoded);
+            }
+            inTransaction.run();
+        });
+        hotCounters.record(encoded);
+        statsResultCache.onWrite(encoded);
+        topHitters.record(encoded);
+        columnarStore.record(encoded);
+    }
+
+    private List<EncodedHit> encode(List<EndpointHit> hits) {
+        List<EncodedHit> encoded = new ArrayList<>(hits.size());
+        for (EndpointHit hit : hits) {
+            encoded.add(new EncodedHit(hitDictionary.getOrCreateAppId(hit.getApp()),
+                    hitDictionary.getOrCreateUriId(hit.getUri()), IpCodec.encode(hit.getIp()), hit.getTimestamp()));
+        }
+        return encoded;
+    }
+}
@@ -0,0 +1,192 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.config.HotProperties;
+import ru.practicum.model.AppUriId;
+import ru.practicum.model.EncodedHit;
+import ru.practicum.model.TimeRange;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*Счетчики последних запросов в памяти: кольцо временных слайсов, в каждом слайсе число запросов
+и множество IP по (app, uri). Слайс разбит на полосы со своей блокировкой, чтобы параллельные записи
+по разным uri не ждали друг друга. Память отвечает только за слайсы, которые видела целиком:
+после старта и после запроса с временем из будущего слайса учет начинается со следующего слайса*/
+@Component
+@Slf4j
+public class HotCounters {
+    private final HotProperties properties;
+    private final long sliceSeconds;
+    private final int windowSlices;
+    /*на один слайс больше окна, чтобы самый старый слайс не вытеснялся, пока его читает запрос*/
+    private final AtomicReferenceArray<Slice> ring;
+    private final AtomicLong trustedFrom;
+
+    public HotCounters(HotProperties properties) {
+        this.properties = properties;
+        this.sliceSeconds = Math.max(1, properties.getSlice().getSeconds());
+        this.windowSlices = (int) Math.max(1, properties.getWindow().getSeconds() / sliceSeconds);
+        this.ring = new AtomicReferenceArray<>(windowSlices + 1);
+        this.trustedFrom = new AtomicLong(sliceOf(LocalDateTime.now()) + 1);
+        if (properties.isEnabled()) {
+            log.info("Statistic service: счетчики в памяти за последние {}, слайс {}",
+                    properties.getWindow(), properties.getSlice());
+        }
+    }
+
+    /*вызывается после фиксации транзакции записи, чтобы память не расходилась с БД*/
+    public void record(List<EncodedHit> hits) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        long current = sliceOf(LocalDateTime.now());
+        for (EncodedHit hit : hits) {
+            long number = sliceOf(hit.getTimestamp());
+            if (number > current) {
+                trustedFrom.accumulateAndGet(number + 1, Math::max);
+                continue;
+            }
+            if (number <= current - windowSlices) {
+                continue;
+            }
+            Slice slice = slot(number);
+            if (slice != null) {
+                slice.add(new AppUriId(hit.getAppId(), hit.getUriId()), hit.getIp());
+            }
+        }
+    }
+
+    /*целые слайсы внутри [from, to), которые память знает полностью; null - память ничем не поможет*/
+    public TimeRange coverage(LocalDateTime from, LocalDateTime to) {
+        if (!properties.isEnabled()) {
+            return null;
+        }
+        long current = sliceOf(LocalDateTime.now());
+        long first = Math.max(Math.max(trustedFrom.get(), current - windowSlices + 1), ceilSlice(from));
+        long last = Math.min(current + 1, sliceOf(to));
+        if (first >= last) {
+            return null;
+        }
+        return new TimeRange(timeOf(first), timeOf(last));
+    }
+
+    public Map<AppUriId, Long> getCounts(TimeRange range, int[] uriIds) {
+        Map<AppUriId, Long> counts = new HashMap<>();
+        forEachCell(range, uriIds, (key, cell) -> counts.merge(key, cell.hits, Long::sum));
+        return counts;
+    }
+
+    public Map<AppUriId, HyperLogLog> getSketches(TimeRange range, int[] uriIds) {
+        Map<AppUriId, HyperLogLog> sketches = new HashMap<>();
+        forEachCell(range, uriIds, (key, cell) -> {
+            HyperLogLog sketch = sketches.computeIfAbsent(key, k -> new HyperLogLog());
+            for (ByteBuffer ip : cell.ips) {
+                sketch.add(ip.array());
+            }
+        });
+        return sketches;
+    }
+
+    private void forEachCell(TimeRange range, int[] uriIds, CellVisitor visitor) {
+        int[] sortedUriIds = uriIds == null ? null : uriIds.clone();
+        if (sortedUriIds != null) {
+            Arrays.sort(sortedUriIds);
+        }
+        for (long number = sliceOf(range.getFrom()); number < sliceOf(range.getTo()); number++) {
+            Slice slice = ring.get(index(number));
+            if (slice == null || slice.number != number) {
+                continue;
+            }
+            for (Stripe stripe : slice.stripes) {
+                synchronized (stripe) {
+                    for (Map.Entry<AppUriId, Cell> entry : stripe.cells.entrySet()) {
+                        if (sortedUriIds == null || Arrays.binarySearch(sortedUriIds, entry.getKey().getUriId()) >= 0) {
+                            visitor.visit(entry.getKey(), entry.getValue());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /*слайс с данным номером; устаревший слайс в ячейке кольца заменяется новым*/
+    private Slice slot(long number) {
+        int index = index(number);
+        while (true) {
+            Slice slice = ring.get(index);
+            if (slice != null && slice.number == number) {
+                return slice;
+            }
+            if (slice != null && slice.number > number) {
+                return null;
+            }
+            Slice fresh = new Slice(number, properties.getStripes());
+            if (ring.compareAndSet(index, slice, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private int index(long number) {
+        return (int) Math.floorMod(number, (long) ring.length());
+    }
+
+    private long sliceOf(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), sliceSeconds);
+    }
+
+    private long ceilSlice(LocalDateTime time) {
+        return -Math.floorDiv(-time.toEpochSecond(ZoneOffset.UTC), sliceSeconds);
+    }
+
+    private LocalDateTime timeOf(long number) {
+        return LocalDateTime.ofEpochSecond(number * sliceSeconds, 0, ZoneOffset.UTC);
+    }
+
+    private interface CellVisitor {
+        void visit(AppUriId key, Cell cell);
+    }
+
+    private static class Slice {
+        private final long number;
+        private final Stripe[] stripes;
+
+        Slice(long number, int stripeCount) {
+            this.number = number;
+            this.stripes = new Stripe[Math.max(1, stripeCount)];
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i] = new Stripe();
+            }
+        }
+
+        void add(AppUriId key, byte[] ip) {
+            Stripe stripe = stripes[Math.floorMod(key.hashCode(), stripes.length)];
+            synchronized (stripe) {
+                Cell cell = stripe.cells.computeIfAbsent(key, k -> new Cell());
+                cell.hits++;
+                cell.ips.add(ByteBuffer.wrap(ip));
+            }
+        }
+    }
+
+    private static class Stripe {
+        private final Map<AppUriId, Cell> cells = new HashMap<>();
+    }
+
+    private static class Cell {
+        private long hits;
+        private final Set<ByteBuffer> ips = new HashSet<>();
+    }
+}
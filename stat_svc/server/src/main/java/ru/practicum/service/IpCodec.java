@@ -0,0 +1,95 @@
+package ru.practicum.service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/*IP хранится 16 байтами: IPv6 как есть, IPv4 в виде ::ffff:a.b.c.d.
+Разбираются только литералы адресов, имена хостов не резолвятся.
+Строка, которая не является IP-адресом, хранится как есть в UTF-8 с префиксом 0xFF (в UTF-8 такого байта нет);
+длина такого значения всегда отличается от 16, при необходимости префикс удваивается. Так же кодирует ewm_ip_bytes в schema.sql*/
+public final class IpCodec {
+    public static final int LENGTH = 16;
+    private static final byte TEXT_TAG = (byte) 0xFF;
+    private static final Pattern IPV4 = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+    private static final Pattern IPV6 = Pattern.compile("[0-9a-fA-F:.]+");
+
+    private IpCodec() {
+    }
+
+    public static byte[] encode(String ip) {
+        byte[] address = encodeAddress(ip);
+        if (address != null) {
+            return address;
+        }
+        byte[] text = ip.getBytes(StandardCharsets.UTF_8);
+        int tags = text.length + 1 == LENGTH ? 2 : 1;
+        byte[] encoded = new byte[tags + text.length];
+        Arrays.fill(encoded, 0, tags, TEXT_TAG);
+        System.arraycopy(text, 0, encoded, tags, text.length);
+        return encoded;
+    }
+
+    /*для хранилищ с IP фиксированной длины: не-IP значения заменяются хешем той же длины*/
+    public static byte[] toFixedLength(byte[] ip) {
+        if (ip.length == LENGTH) {
+            return ip;
+        }
+        try {
+            return MessageDigest.getInstance("MD5").digest(ip);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*null, если строка не является IP-адресом*/
+    private static byte[] encodeAddress(String ip) {
+        if (ip == null) {
+            return null;
+        }
+        if (IPV4.matcher(ip).matches()) {
+            byte[] mapped = new byte[LENGTH];
+            mapped[10] = (byte) 0xFF;
+            mapped[11] = (byte) 0xFF;
+            String[] octets = ip.split("\\.");
+            for (int i = 0; i < 4; i++) {
+                int octet = Integer.parseInt(octets[i]);
+                if (octet > 255) {
+                    return null;
+                }
+                mapped[12 + i] = (byte) octet;
+            }
+            return mapped;
+        }
+        if (ip.indexOf(':') < 0 || !IPV6.matcher(ip).matches()) {
+            return null;
+        }
+        try {
+            /*строка с ':' разбирается как литерал IPv6, без обращения к DNS*/
+            byte[] address = InetAddress.getByName(ip).getAddress();
+            return address.length == LENGTH ? address : encodeAddress(InetAddress.getByAddress(address).getHostAddress());
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    /*IPv4-mapped адреса InetAddress сам возвращает как Inet4Address*/
+    public static String decode(byte[] ip) {
+        if (ip.length != LENGTH) {
+            int start = 0;
+            while (start < ip.length && ip[start] == TEXT_TAG) {
+                start++;
+            }
+            return new String(ip, start, ip.length - start, StandardCharsets.UTF_8);
+        }
+        try {
+            return InetAddress.getByAddress(ip).getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Некорректная длина IP-адреса: " + ip.length, e);
+        }
+    }
+}
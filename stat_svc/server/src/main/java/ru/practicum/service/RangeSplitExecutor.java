@@ -0,0 +1,101 @@
+package ru.practicum.service;
+
+import org.springframework.stereotype.Component;
+import ru.practicum.config.ParallelProperties;
+import ru.practicum.datasource.DataSourceRoute;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.TimeRange;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/*Делит большие диапазоны на части по целым суткам и считает их параллельно на общем ограниченном пуле.
+Границы частей выровнены по суткам, поэтому каждая часть по-прежнему читается из посуточных агрегатов*/
+@Component
+public class RangeSplitExecutor {
+    private final ParallelProperties properties;
+    private final ThreadPoolExecutor executor;
+
+    public RangeSplitExecutor(ParallelProperties properties) {
+        this.properties = properties;
+        if (properties.getParallelism() <= 1) {
+            this.executor = null;
+            return;
+        }
+        AtomicInteger threads = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "stats-query-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        /*при заполненной очереди часть выполняется в потоке запроса - это и ограничивает нагрузку на БД*/
+        this.executor = new ThreadPoolExecutor(properties.getParallelism(), properties.getParallelism(), 0,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(properties.getQueueCapacity()), threadFactory,
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /*одна часть - диапазон считается последовательно*/
+    public List<TimeRange> split(LocalDateTime from, LocalDateTime to) {
+        List<TimeRange> parts = new ArrayList<>();
+        LocalDateTime firstDay = Granularity.DAY.ceil(from);
+        LocalDateTime lastDay = Granularity.DAY.floor(to);
+        long days = firstDay.isBefore(lastDay) ? ChronoUnit.DAYS.between(firstDay, lastDay) : 0;
+        int splits = (int) Math.min(days, properties.getMaxSplits());
+        if (executor == null || splits < 2 || from.plus(properties.getSerialThreshold()).isAfter(to)) {
+            parts.add(new TimeRange(from, to));
+            return parts;
+        }
+        /*неполные сутки на краях достаются первой и последней части*/
+        LocalDateTime partFrom = from;
+        for (int i = 1; i < splits; i++) {
+            LocalDateTime partTo = firstDay.plusDays(days * i / splits);
+            parts.add(new TimeRange(partFrom, partTo));
+            partFrom = partTo;
+        }
+        parts.add(new TimeRange(partFrom, to));
+        return parts;
+    }
+
+    public <T> List<T> map(List<TimeRange> parts, Function<TimeRange, T> task) {
+        List<T> results = new ArrayList<>(parts.size());
+        if (parts.size() == 1) {
+            results.add(task.apply(parts.get(0)));
+            return results;
+        }
+        boolean replica = DataSourceRoute.isReplica();
+        List<CompletableFuture<T>> futures = new ArrayList<>(parts.size());
+        for (TimeRange part : parts) {
+            futures.add(CompletableFuture.supplyAsync(() -> DataSourceRoute.call(replica, () -> task.apply(part)), executor));
+        }
+        try {
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(false));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
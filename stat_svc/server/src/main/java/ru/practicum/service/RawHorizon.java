@@ -0,0 +1,36 @@
+package ru.practicum.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.practicum.repository.CompactionJdbcRepository;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+
+/*Граница сырых данных: hits раньше нее уплотнены в агрегаты и скетчи (HitCompactor), такие запросы
+отвечаются с точностью до корзины. null - уплотнения еще не было*/
+@Component
+@RequiredArgsConstructor
+public class RawHorizon {
+    private final CompactionJdbcRepository compactionJdbcRepository;
+    private volatile LocalDateTime horizon;
+
+    @PostConstruct
+    public void refresh() {
+        horizon = compactionJdbcRepository.findHorizon();
+    }
+
+    public LocalDateTime get() {
+        return horizon;
+    }
+
+    /*задевает ли диапазон, начинающийся с from, уплотненный период*/
+    public boolean covers(LocalDateTime from) {
+        LocalDateTime current = horizon;
+        return current != null && from.isBefore(current);
+    }
+
+    void set(LocalDateTime horizon) {
+        this.horizon = horizon;
+    }
+}
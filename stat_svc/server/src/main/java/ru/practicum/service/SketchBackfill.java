@@ -0,0 +1,89 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.config.UniqueProperties;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.RollupKey;
+import ru.practicum.repository.HitJdbcRepository;
+import ru.practicum.repository.SketchJdbcRepository;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.time.LocalDateTime;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/*Однократное построение скетчей по уже накопленным hits. Завершение отмечается в hit_sketch_backfill
+только после записи последнего пакета: прерванное построение повторяется при следующем запуске целиком.
+Объединение скетчей идемпотентно, поэтому повтор и параллельная запись новых hits ничего не удваивают*/
+@Component
+@Slf4j
+public class SketchBackfill implements ApplicationRunner {
+    private final HitJdbcRepository hitJdbcRepository;
+    private final SketchJdbcRepository sketchJdbcRepository;
+    private final UniqueProperties properties;
+    private final SketchService sketchService;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate writeTransaction;
+
+    public SketchBackfill(HitJdbcRepository hitJdbcRepository, SketchJdbcRepository sketchJdbcRepository,
+                          UniqueProperties properties, SketchService sketchService,
+                          PlatformTransactionManager transactionManager) {
+        this.hitJdbcRepository = hitJdbcRepository;
+        this.sketchJdbcRepository = sketchJdbcRepository;
+        this.properties = properties;
+        this.sketchService = sketchService;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        /*пока скетчи не ведутся, таблица очищается: после их включения она будет построена заново, без пропусков*/
+        if (!sketchService.isEnabled()) {
+            writeTransaction.executeWithoutResult(status -> {
+                sketchJdbcRepository.deleteAll();
+                sketchJdbcRepository.setBackfilled(false);
+            });
+            return;
+        }
+        if (sketchJdbcRepository.isBackfilled()) {
+            return;
+        }
+        SortedMap<RollupKey, HyperLogLog> pending = new TreeMap<>();
+        long[] rows = {0};
+        readTransaction.executeWithoutResult(status -> hitJdbcRepository.forEachHourlyDistinctIp(rs -> {
+            int app = rs.getInt("app_id");
+            int uri = rs.getInt("uri_id");
+            long hash = HyperLogLog.hash(rs.getBytes("ip"));
+            LocalDateTime hour = rs.getTimestamp("bucket_start").toLocalDateTime();
+            pending.computeIfAbsent(new RollupKey(Granularity.HOUR, hour, app, uri), k -> new HyperLogLog()).addHash(hash);
+            pending.computeIfAbsent(new RollupKey(Granularity.DAY, Granularity.DAY.floor(hour), app, uri), k -> new HyperLogLog())
+                    .addHash(hash);
+            rows[0]++;
+            if (pending.size() >= properties.getBackfillBatchSize()) {
+                flush(pending);
+            }
+        }));
+        flush(pending);
+        writeTransaction.executeWithoutResult(status -> sketchJdbcRepository.setBackfilled(true));
+        if (rows[0] > 0) {
+            log.info("Statistic service: скетчи уникальных посетителей построены по {} записям", rows[0]);
+        }
+    }
+
+    private void flush(SortedMap<RollupKey, HyperLogLog> pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        writeTransaction.executeWithoutResult(status -> sketchJdbcRepository.merge(pending));
+        pending.clear();
+    }
+}
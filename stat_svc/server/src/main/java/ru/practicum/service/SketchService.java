@@ -0,0 +1,80 @@
+package ru.practicum.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import ru.practicum.config.CompactionProperties;
+import ru.practicum.config.UniqueMode;
+import ru.practicum.config.UniqueProperties;
+import ru.practicum.model.AppUriId;
+import ru.practicum.model.EncodedHit;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.IdStats;
+import ru.practicum.model.RollupKey;
+import ru.practicum.model.TimeSegment;
+import ru.practicum.repository.HitJdbcRepository;
+import ru.practicum.repository.SketchJdbcRepository;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/*Приближенный подсчет уникальных IP: почасовые и посуточные скетчи HyperLogLog (пишутся вместе с hits),
+края диапазона короче часа добираются из сырых hits и добавляются в те же скетчи*/
+@Service
+@RequiredArgsConstructor
+public class SketchService {
+    static final Granularity[] SKETCH_GRANULARITIES = {Granularity.HOUR, Granularity.DAY};
+
+    private final SketchJdbcRepository sketchJdbcRepository;
+    private final HitJdbcRepository hitJdbcRepository;
+    private final BucketPlanner bucketPlanner;
+    private final UniqueProperties uniqueProperties;
+    private final CompactionProperties compactionProperties;
+    private final RawHorizon rawHorizon;
+
+    /*скетчи нужны для режима APPROXIMATE и для уплотненного периода, где сырых IP нет*/
+    public boolean isEnabled() {
+        return uniqueProperties.getMode() == UniqueMode.APPROXIMATE || compactionProperties.isEnabled()
+                || rawHorizon.get() != null;
+    }
+
+    public void write(List<EncodedHit> hits) {
+        SortedMap<RollupKey, HyperLogLog> sketches = new TreeMap<>();
+        for (EncodedHit hit : hits) {
+            long hash = HyperLogLog.hash(hit.getIp());
+            for (Granularity granularity : SKETCH_GRANULARITIES) {
+                RollupKey key = new RollupKey(granularity, granularity.floor(hit.getTimestamp()),
+                        hit.getAppId(), hit.getUriId());
+                sketches.computeIfAbsent(key, k -> new HyperLogLog()).addHash(hash);
+            }
+        }
+        sketchJdbcRepository.merge(sketches);
+    }
+
+    public List<IdStats> getUniqueStats(LocalDateTime from, LocalDateTime to, int[] uriIds) {
+        return estimate(getSketches(from, to, uriIds));
+    }
+
+    public static List<IdStats> estimate(Map<AppUriId, HyperLogLog> sketches) {
+        return sketches.entrySet().stream()
+                .map(e -> new IdStats(e.getKey().getAppId(), e.getKey().getUriId(), e.getValue().estimate()))
+                .sorted(Comparator.comparingLong(IdStats::getHits).reversed())
+                .collect(Collectors.toList());
+    }
+
+    public Map<AppUriId, HyperLogLog> getSketches(LocalDateTime from, LocalDateTime to, int[] uriIds) {
+        Map<Boolean, List<TimeSegment>> segments = bucketPlanner.plan(from, to, Granularity.HOUR).stream()
+                .collect(Collectors.partitioningBy(TimeSegment::isRaw));
+
+        Map<AppUriId, HyperLogLog> sketches = sketchJdbcRepository.getSketches(segments.get(false), uriIds);
+        hitJdbcRepository.forEachDistinctIp(segments.get(true), uriIds, rs -> sketches
+                .computeIfAbsent(new AppUriId(rs.getInt("app_id"), rs.getInt("uri_id")), k -> new HyperLogLog())
+                .add(rs.getBytes("ip")));
+        return sketches;
+    }
+}
@@ -0,0 +1,171 @@
+package ru.practicum.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import ru.practicum.config.ReplicaProperties;
+import ru.practicum.config.StatsCacheProperties;
+import ru.practicum.config.UniqueMode;
+import ru.practicum.model.EncodedHit;
+import ru.practicum.model.IdStats;
+import ru.practicum.model.StatsCacheKey;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/*Кэш ответов /stats. Диапазон, заканчивающийся до текущей корзины, закрыт и хранится долго.
+Живой диапазон хранится коротко, а запись hits этим экземпляром сразу делает устаревшими живые ответы
+по тем же uri (номер записи сравнивается с номером на момент расчета). Запросы, пришедшие с опозданием
+(повтор журнала, буфер ASYNC, клиентские пакеты и спул), удаляют закрытые ответы, чей диапазон их покрывает.
+Записи других экземпляров кэш не видит, поэтому при нескольких экземплярах закрытые ответы отстают до closedTtl.
+При чтении с реплик граница живых диапазонов сдвигается назад на допустимое отставание реплики (stats.replica.max-lag):
+иначе закрытым считался бы ответ реплики, еще не получившей последние записи*/
+@Component
+public class StatsResultCache {
+    private final StatsCacheProperties properties;
+    private final Duration readLag;
+    private final Cache<StatsCacheKey, CachedStats> cache;
+    private final AtomicLong writeSequence = new AtomicLong();
+    private final AtomicLong lastWrite = new AtomicLong();
+    /*число записей с опоздавшими запросами*/
+    private final AtomicLong lateWrites = new AtomicLong();
+    private final Map<Integer, Long> lastUriWrites = new ConcurrentHashMap<>();
+
+    public StatsResultCache(StatsCacheProperties properties, ReplicaProperties replicaProperties,
+                            MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.readLag = replicaProperties.isEnabled() ? replicaProperties.getMaxLag() : Duration.ZERO;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfter(new Expiry<StatsCacheKey, CachedStats>() {
+                    @Override
+                    public long expireAfterCreate(StatsCacheKey key, CachedStats value, long currentTime) {
+                        return (key.isLive() ? properties.getLiveTtl() : properties.getClosedTtl()).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(StatsCacheKey key, CachedStats value, long currentTime,
+                                                  long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(StatsCacheKey key, CachedStats value, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "stats.results");
+    }
+
+    public List<IdStats> get(LocalDateTime start, LocalDateTime end, int[] uriIds, UniqueMode uniqueMode,
+                             Supplier<List<IdStats>> loader) {
+        if (!properties.isEnabled()) {
+            return loader.get();
+        }
+        StatsCacheKey key = key(start, end, uriIds, uniqueMode);
+        CachedStats cached = cache.asMap().get(key);
+        if (cached != null && key.isLive() && !isFresh(key, cached)) {
+            cache.asMap().remove(key, cached);
+        }
+        long lateBefore = lateWrites.get();
+        boolean[] loaded = {false};
+        CachedStats result = cache.get(key, k -> {
+            long sequence = writeSequence.get();
+            loaded[0] = true;
+            return new CachedStats(loader.get(), sequence);
+        });
+        /*опоздавшая запись во время расчета могла не найти ответ в кэше, такой ответ не сохраняется*/
+        if (loaded[0] && !key.isLive() && lateWrites.get() != lateBefore) {
+            cache.asMap().remove(key, result);
+        }
+        return result.stats;
+    }
+
+    /*вызывается после фиксации транзакции записи*/
+    public void onWrite(List<EncodedHit> hits) {
+        if (!properties.isEnabled() || hits.isEmpty()) {
+            return;
+        }
+        long sequence = writeSequence.incrementAndGet();
+        LocalDateTime liveEdge = liveEdge();
+        Set<Integer> lateUriIds = new HashSet<>();
+        LocalDateTime oldest = null;
+        LocalDateTime newest = null;
+        for (EncodedHit hit : hits) {
+            lastUriWrites.put(hit.getUriId(), sequence);
+            LocalDateTime timestamp = hit.getTimestamp();
+            if (timestamp.isBefore(liveEdge)) {
+                lateUriIds.add(hit.getUriId());
+                oldest = oldest == null || timestamp.isBefore(oldest) ? timestamp : oldest;
+                newest = newest == null || timestamp.isAfter(newest) ? timestamp : newest;
+            }
+        }
+        lastWrite.set(sequence);
+        if (oldest != null) {
+            lateWrites.incrementAndGet();
+            invalidateClosed(oldest, newest, lateUriIds);
+        }
+    }
+
+    /*конец диапазона включается в него, как в /stats*/
+    private void invalidateClosed(LocalDateTime oldest, LocalDateTime newest, Set<Integer> uriIds) {
+        cache.asMap().keySet().removeIf(key -> !key.isLive()
+                && !key.getStart().isAfter(newest) && !key.getEnd().isBefore(oldest)
+                && (key.getUriIds() == null || Arrays.stream(key.getUriIds()).anyMatch(uriIds::contains)));
+    }
+
+    private boolean isFresh(StatsCacheKey key, CachedStats cached) {
+        if (key.getUriIds() == null) {
+            return lastWrite.get() <= cached.sequence;
+        }
+        for (int uriId : key.getUriIds()) {
+            if (lastUriWrites.getOrDefault(uriId, 0L) > cached.sequence) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*начало корзины, в которую попадает текущий момент за вычетом отставания реплик: диапазоны, заканчивающиеся раньше, закрыты*/
+    private LocalDateTime liveEdge() {
+        long bucketSeconds = Math.max(1, properties.getBucket().getSeconds());
+        long now = LocalDateTime.now().minus(readLag).toEpochSecond(ZoneOffset.UTC);
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(now, bucketSeconds) * bucketSeconds, 0, ZoneOffset.UTC);
+    }
+
+    private StatsCacheKey key(LocalDateTime start, LocalDateTime end, int[] uriIds, UniqueMode uniqueMode) {
+        boolean live = !end.isBefore(liveEdge());
+        int[] sortedUriIds = null;
+        if (uriIds != null) {
+            sortedUriIds = uriIds.clone();
+            Arrays.sort(sortedUriIds);
+        }
+        return new StatsCacheKey(start, end, sortedUriIds, uniqueMode, live);
+    }
+
+    private static class CachedStats {
+        private final List<IdStats> stats;
+        /*номер последней записи, видимой на момент расчета*/
+        private final long sequence;
+
+        CachedStats(List<IdStats> stats, long sequence) {
+            this.stats = stats;
+            this.sequence = sequence;
+        }
+    }
+}
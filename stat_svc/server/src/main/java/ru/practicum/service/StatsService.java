@@ -2,67 +2,434 @@ package ru.practicum.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import ru.practicum.config.IngestMode;
+import ru.practicum.config.IngestProperties;
+import ru.practicum.config.RollupProperties;
+import ru.practicum.config.TimeSeriesProperties;
+import ru.practicum.config.TopProperties;
+import ru.practicum.config.UniqueMode;
+import ru.practicum.config.UniqueProperties;
+import ru.practicum.datasource.DataSourceRoute;
+import ru.practicum.dto.BulkHitsResponse;
+import ru.practicum.dto.EndpointHit;
 import ru.practicum.dto.EndpointHitDto;
 import ru.practicum.dto.EndpointHitMapper;
 import ru.practicum.dto.EndpointStats;
+import ru.practicum.dto.EndpointTimeSeries;
+import ru.practicum.dto.ExportParamDto;
+import ru.practicum.dto.IdViewsDto;
+import ru.practicum.dto.IdViewsQueryDto;
 import ru.practicum.dto.RequestParamDto;
+import ru.practicum.dto.TimeSeriesParamDto;
+import ru.practicum.dto.TopParamDto;
 import ru.practicum.exception.ValidationException;
-import ru.practicum.repository.StatsJpaRepository;
+import ru.practicum.model.AppUriId;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.HitExportQuery;
+import ru.practicum.model.IdStats;
+import ru.practicum.model.TimeRange;
+import ru.practicum.model.TimeSegment;
+import ru.practicum.pattern.UriPattern;
+import ru.practicum.repository.HitJdbcRepository;
+import ru.practicum.repository.RollupJdbcRepository;
+import ru.practicum.sketch.HyperLogLog;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URLDecoder;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 @Service
 public class StatsService {
     private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final LocalDateTime VIEWS_START = LocalDateTime.of(1970, 1, 1, 0, 0);
 
-    private final StatsJpaRepository statsJpaRepository;
+    private final HitJdbcRepository hitJdbcRepository;
+    private final RollupJdbcRepository rollupJdbcRepository;
+    private final HitWriter hitWriter;
+    private final HitIngestQueue hitIngestQueue;
+    private final HitWriteAheadLog hitWriteAheadLog;
+    private final HitBulkLoader hitBulkLoader;
+    private final HitExporter hitExporter;
+    private final BucketPlanner bucketPlanner;
+    private final SketchService sketchService;
+    private final HitDictionary hitDictionary;
+    private final HotCounters hotCounters;
+    private final StatsResultCache statsResultCache;
+    private final TopHitters topHitters;
+    private final TimeSeriesService timeSeriesService;
+    private final ColumnarStore columnarStore;
+    private final RawHorizon rawHorizon;
+    private final RangeSplitExecutor rangeSplitExecutor;
+    private final IngestProperties ingestProperties;
+    private final RollupProperties rollupProperties;
+    private final UniqueProperties uniqueProperties;
+    private final TopProperties topProperties;
+    private final TimeSeriesProperties timeSeriesProperties;
 
     @Autowired
-    public StatsService(StatsJpaRepository statsJpaRepository) {
-        this.statsJpaRepository = statsJpaRepository;
+    public StatsService(HitJdbcRepository hitJdbcRepository, RollupJdbcRepository rollupJdbcRepository, HitWriter hitWriter,
+                        HitIngestQueue hitIngestQueue, HitWriteAheadLog hitWriteAheadLog, HitBulkLoader hitBulkLoader,
+                        HitExporter hitExporter, BucketPlanner bucketPlanner, SketchService sketchService, HitDictionary hitDictionary,
+                        HotCounters hotCounters, StatsResultCache statsResultCache, TopHitters topHitters,
+                        TimeSeriesService timeSeriesService, ColumnarStore columnarStore, RawHorizon rawHorizon,
+                        RangeSplitExecutor rangeSplitExecutor, IngestProperties ingestProperties,
+                        RollupProperties rollupProperties, UniqueProperties uniqueProperties, TopProperties topProperties,
+                        TimeSeriesProperties timeSeriesProperties) {
+        this.hitJdbcRepository = hitJdbcRepository;
+        this.rollupJdbcRepository = rollupJdbcRepository;
+        this.hitWriter = hitWriter;
+        this.hitIngestQueue = hitIngestQueue;
+        this.hitWriteAheadLog = hitWriteAheadLog;
+        this.hitBulkLoader = hitBulkLoader;
+        this.hitExporter = hitExporter;
+        this.bucketPlanner = bucketPlanner;
+        this.sketchService = sketchService;
+        this.hitDictionary = hitDictionary;
+        this.hotCounters = hotCounters;
+        this.statsResultCache = statsResultCache;
+        this.topHitters = topHitters;
+        this.timeSeriesService = timeSeriesService;
+        this.columnarStore = columnarStore;
+        this.rawHorizon = rawHorizon;
+        this.rangeSplitExecutor = rangeSplitExecutor;
+        this.ingestProperties = ingestProperties;
+        this.rollupProperties = rollupProperties;
+        this.uniqueProperties = uniqueProperties;
+        this.topProperties = topProperties;
+        this.timeSeriesProperties = timeSeriesProperties;
     }
 
     public void saveHit(EndpointHitDto hitDto) {
-        statsJpaRepository.save(EndpointHitMapper.toHit(hitDto));
+        EndpointHit hit = EndpointHitMapper.toHit(hitDto);
+        if (ingestProperties.getMode() == IngestMode.ASYNC) {
+            hitIngestQueue.enqueue(hit);
+        } else if (ingestProperties.getMode() == IngestMode.WAL) {
+            hitWriteAheadLog.append(hit);
+        } else {
+            hitWriter.write(List.of(hit));
+        }
     }
 
-    public List<EndpointHitDto> getAllHits() {
-        return statsJpaRepository.findAll().stream()
-                .map(EndpointHitMapper::toDto)
-                .collect(Collectors.toList());
+    public BulkHitsResponse saveHits(InputStream body) throws IOException {
+        return hitBulkLoader.load(body);
+    }
+
+    public HitExportQuery prepareExport(ExportParamDto params) {
+        return hitExporter.prepare(params);
+    }
+
+    public void exportHits(HitExportQuery query, OutputStream out) throws IOException {
+        hitExporter.export(query, out);
     }
 
     public List<EndpointStats> getStats(RequestParamDto requestParamDto) {
 
-        String startDecoded = URLDecoder.decode(requestParamDto.getStart(), StandardCharsets.UTF_8);
-        String endDecoded = URLDecoder.decode(requestParamDto.getEnd(), StandardCharsets.UTF_8);
+        LocalDateTime start = parseTime(requestParamDto.getStart());
+        LocalDateTime end = parseTime(requestParamDto.getEnd());
 
-        LocalDateTime start = LocalDateTime.parse(startDecoded, TIME_FORMAT);
-        LocalDateTime end = LocalDateTime.parse(endDecoded, TIME_FORMAT);
+        if (start.isAfter(end)) {
+            throw new ValidationException("Неправильно указано время для поиска!");
+        }
 
+        /*uri переводятся в id словаря; если ни один uri не встречался, статистика заведомо пуста*/
+        int[] uriIds = requestParamDto.getUris() == null ? null : hitDictionary.findUriIds(requestParamDto.getUris());
+        if (uriIds != null && uriIds.length == 0) {
+            return new ArrayList<>();
+        }
+
+        /*null - неуникальный запрос*/
+        UniqueMode uniqueMode = requestParamDto.isUnique() ? toUniqueMode(requestParamDto.getUniqueMode()) : null;
+        Integer depth = requestParamDto.getGroupDepth();
+        if (depth == null) {
+            return hitDictionary.toEndpointStats(getIdStats(start, end, uriIds, uniqueMode));
+        }
+        if (depth < 1) {
+            throw new ValidationException("Параметр groupDepth должен быть положительным");
+        }
+        Map<Integer, Map<String, Long>> groups = new HashMap<>();
+        if (uniqueMode == null) {
+            for (IdStats row : getIdStats(start, end, uriIds, null)) {
+                groups.computeIfAbsent(row.getAppId(), k -> new HashMap<>())
+                        .merge(groupUri(hitDictionary.getUri(row.getUriId()), depth), row.getHits(), Long::sum);
+            }
+        } else {
+            DataSourceRoute.onReplica(() -> getGroupedUniqueStats(start, end.plusSeconds(1), uriIds, uniqueMode, depth, groups));
+        }
+        List<EndpointStats> result = new ArrayList<>();
+        groups.forEach((appId, byUri) -> byUri.forEach((uri, hits) ->
+                result.add(new EndpointStats(hitDictionary.getApp(appId), uri, hits))));
+        result.sort(Comparator.comparingLong(EndpointStats::getHits).reversed());
+        return result;
+    }
+
+    /*уникальные IP не суммируются по uri: скетчи объединяются по группам, точные множества IP собираются из сырых hits
+    (для уплотненного периода сырых IP нет, там всегда скетчи)*/
+    private void getGroupedUniqueStats(LocalDateTime start, LocalDateTime to, int[] uriIds, UniqueMode uniqueMode,
+                                       int depth, Map<Integer, Map<String, Long>> groups) {
+        if (uniqueMode == UniqueMode.APPROXIMATE || rawHorizon.covers(start)) {
+            Map<Integer, Map<String, HyperLogLog>> sketches = new HashMap<>();
+            sketchService.getSketches(start, to, uriIds).forEach((key, sketch) -> sketches
+                    .computeIfAbsent(key.getAppId(), k -> new HashMap<>())
+                    .merge(groupUri(hitDictionary.getUri(key.getUriId()), depth), sketch, HyperLogLog::merge));
+            sketches.forEach((appId, byUri) -> byUri.forEach((uri, sketch) ->
+                    groups.computeIfAbsent(appId, k -> new HashMap<>()).put(uri, sketch.estimate())));
+            return;
+        }
+        Map<Integer, Map<String, Set<ByteBuffer>>> ips = new HashMap<>();
+        hitJdbcRepository.forEachDistinctIp(List.of(new TimeSegment(null, start, to)), uriIds, rs -> ips
+                .computeIfAbsent(rs.getInt("app_id"), k -> new HashMap<>())
+                .computeIfAbsent(groupUri(hitDictionary.getUri(rs.getInt("uri_id")), depth), k -> new HashSet<>())
+                .add(ByteBuffer.wrap(rs.getBytes("ip"))));
+        ips.forEach((appId, byUri) -> byUri.forEach((uri, set) ->
+                groups.computeIfAbsent(appId, k -> new HashMap<>()).put(uri, (long) set.size())));
+    }
+
+    /*первые depth сегментов пути: /events/1/comments при depth = 1 - /events*/
+    private static String groupUri(String uri, int depth) {
+        int position = uri.startsWith("/") ? 1 : 0;
+        for (int i = 0; i < depth; i++) {
+            int next = uri.indexOf('/', position);
+            if (next < 0) {
+                return uri;
+            }
+            position = next + 1;
+        }
+        return uri.substring(0, position - 1);
+    }
+
+    public IdViewsDto getViews(IdViewsQueryDto query) {
+        LocalDateTime start = query.getStart() == null ? VIEWS_START : parseTime(query.getStart());
+        LocalDateTime end = query.getEnd() == null ? LocalDateTime.now() : parseTime(query.getEnd());
         if (start.isAfter(end)) {
             throw new ValidationException("Неправильно указано время для поиска!");
         }
 
-        String[] uris = requestParamDto.getUris();
+        if (UriPattern.isPattern(query.getPrefix())) {
+            throw new ValidationException("Префикс не может содержать '*': " + query.getPrefix());
+        }
+        int[] ids = query.getIds();
+        String[] uris = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            uris[i] = query.getPrefix() + ids[i];
+        }
+        int[] uriIds = hitDictionary.findUriIds(uris);
+        if (uriIds.length == 0) {
+            return new IdViewsDto();
+        }
+        Map<Integer, Integer> idsByUri = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            Integer uriId = hitDictionary.getUriIds().get(uris[i]);
+            if (uriId != null) {
+                idsByUri.put(uriId, ids[i]);
+            }
+        }
+
+        UniqueMode uniqueMode = query.isUnique() ? uniqueProperties.getMode() : null;
+        /*одинаковый uri разных приложений суммируется*/
+        TreeMap<Integer, Long> views = new TreeMap<>();
+        for (IdStats row : getIdStats(start, end, uriIds, uniqueMode)) {
+            views.merge(idsByUri.get(row.getUriId()), row.getHits(), Long::sum);
+        }
+        int[] viewIds = new int[views.size()];
+        long[] hits = new long[views.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Long> entry : views.entrySet()) {
+            viewIds[i] = entry.getKey();
+            hits[i++] = entry.getValue();
+        }
+        return new IdViewsDto(viewIds, hits);
+    }
+
+    /*границы запроса включительные, данные читаются полуинтервалом до end + 1 сек*/
+    private List<IdStats> getIdStats(LocalDateTime start, LocalDateTime end, int[] uriIds, UniqueMode uniqueMode) {
+        return statsResultCache.get(start, end, uriIds, uniqueMode,
+                () -> DataSourceRoute.onReplica(() -> computeStats(start, end.plusSeconds(1), uriIds, uniqueMode)));
+    }
+
+    private List<IdStats> computeStats(LocalDateTime start, LocalDateTime to, int[] uriIds, UniqueMode uniqueMode) {
+        /*колоночное хранилище содержит и последние записи, и сырые IP, поэтому отвечает на любой запрос целиком*/
+        if (columnarStore.isEnabled()) {
+            return columnarStore.getStats(start, to, uriIds, uniqueMode != null);
+        }
+        /*в уплотненном периоде сырых IP нет, точный подсчет уникальных заменяется оценкой по скетчам*/
+        boolean compacted = rawHorizon.covers(start);
+        UniqueMode mode = uniqueMode == UniqueMode.EXACT && compacted ? UniqueMode.APPROXIMATE : uniqueMode;
+        /*точное число уникальных IP не складывается из частей, такие запросы целиком идут в БД*/
+        TimeRange hot = mode == UniqueMode.EXACT ? null : hotCounters.coverage(start, to);
+        if (hot != null) {
+            return getStatsWithHot(start, to, hot, uriIds, mode != null);
+        }
+        List<TimeRange> parts = rangeSplitExecutor.split(start, to);
+        if (parts.size() > 1) {
+            return computeParallel(parts, uriIds, mode, compacted);
+        } else if (mode == UniqueMode.APPROXIMATE) {
+            return sketchService.getUniqueStats(start, to, uriIds);
+        } else if (mode == UniqueMode.EXACT) {
+            return hitJdbcRepository.getStats(start, to, uriIds, true);
+        } else if (rollupProperties.isEnabled() || compacted) {
+            return rollupJdbcRepository.getStats(bucketPlanner.plan(start, to), uriIds);
+        } else {
+            return hitJdbcRepository.getStats(start, to, uriIds, false);
+        }
+    }
+
+    /*части считаются независимо: счетчики складываются, скетчи объединяются, точные множества IP объединяются*/
+    private List<IdStats> computeParallel(List<TimeRange> parts, int[] uriIds, UniqueMode mode, boolean compacted) {
+        if (mode == UniqueMode.APPROXIMATE) {
+            Map<AppUriId, HyperLogLog> sketches = new HashMap<>();
+            for (Map<AppUriId, HyperLogLog> part : rangeSplitExecutor.map(parts,
+                    range -> sketchService.getSketches(range.getFrom(), range.getTo(), uriIds))) {
+                part.forEach((key, sketch) -> sketches.merge(key, sketch, HyperLogLog::merge));
+            }
+            return SketchService.estimate(sketches);
+        }
+        if (mode == UniqueMode.EXACT) {
+            Map<AppUriId, Set<ByteBuffer>> ips = new HashMap<>();
+            for (Map<AppUriId, Set<ByteBuffer>> part : rangeSplitExecutor.map(parts, range -> {
+                Map<AppUriId, Set<ByteBuffer>> partIps = new HashMap<>();
+                hitJdbcRepository.forEachDistinctIp(List.of(new TimeSegment(null, range.getFrom(), range.getTo())), uriIds,
+                        rs -> partIps.computeIfAbsent(new AppUriId(rs.getInt("app_id"), rs.getInt("uri_id")),
+                                k -> new HashSet<>()).add(ByteBuffer.wrap(rs.getBytes("ip"))));
+                return partIps;
+            })) {
+                part.forEach((key, set) -> ips.merge(key, set, (a, b) -> {
+                    a.addAll(b);
+                    return a;
+                }));
+            }
+            return toIdStats(ips.entrySet().stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, e -> (long) e.getValue().size())));
+        }
+        boolean rollup = rollupProperties.isEnabled() || compacted;
+        Map<AppUriId, Long> counts = new HashMap<>();
+        for (List<IdStats> part : rangeSplitExecutor.map(parts, range -> rollup
+                ? rollupJdbcRepository.getStats(bucketPlanner.plan(range.getFrom(), range.getTo()), uriIds)
+                : hitJdbcRepository.getStats(range.getFrom(), range.getTo(), uriIds, false))) {
+            for (IdStats row : part) {
+                counts.merge(new AppUriId(row.getAppId(), row.getUriId()), row.getHits(), Long::sum);
+            }
+        }
+        return toIdStats(counts);
+    }
 
-        if (requestParamDto.isUnique()) {
-            if (uris == null) {
-                return statsJpaRepository.getStatsUnique(start, end);
-            } else {
-                return statsJpaRepository.getStatsUniqueWithUris(start, end, uris);
+    /*последние слайсы - из памяти, остальное (до и после них) - из БД*/
+    private List<IdStats> getStatsWithHot(LocalDateTime start, LocalDateTime to, TimeRange hot, int[] uriIds,
+                                          boolean unique) {
+        List<TimeRange> persisted = new ArrayList<>();
+        if (start.isBefore(hot.getFrom())) {
+            persisted.add(new TimeRange(start, hot.getFrom()));
+        }
+        if (hot.getTo().isBefore(to)) {
+            persisted.add(new TimeRange(hot.getTo(), to));
+        }
+
+        if (unique) {
+            Map<AppUriId, HyperLogLog> sketches = hotCounters.getSketches(hot, uriIds);
+            for (TimeRange range : persisted) {
+                sketchService.getSketches(range.getFrom(), range.getTo(), uriIds)
+                        .forEach((key, sketch) -> sketches.merge(key, sketch, HyperLogLog::merge));
+            }
+            return SketchService.estimate(sketches);
+        }
+
+        Map<AppUriId, Long> counts = hotCounters.getCounts(hot, uriIds);
+        List<IdStats> persistedStats;
+        if (rollupProperties.isEnabled() || rawHorizon.covers(start)) {
+            List<TimeSegment> segments = new ArrayList<>();
+            for (TimeRange range : persisted) {
+                segments.addAll(bucketPlanner.plan(range.getFrom(), range.getTo()));
             }
+            persistedStats = rollupJdbcRepository.getStats(segments, uriIds);
         } else {
-            if (uris == null) {
-                return statsJpaRepository.getStatsNotUnique(start, end);
-            } else {
-                return statsJpaRepository.getStatsNotUniqueWithUris(start, end, uris);
+            persistedStats = new ArrayList<>();
+            for (TimeRange range : persisted) {
+                persistedStats.addAll(hitJdbcRepository.getStats(range.getFrom(), range.getTo(), uriIds, false));
             }
         }
+        for (IdStats row : persistedStats) {
+            counts.merge(new AppUriId(row.getAppId(), row.getUriId()), row.getHits(), Long::sum);
+        }
+        return toIdStats(counts);
+    }
+
+    private static List<IdStats> toIdStats(Map<AppUriId, Long> counts) {
+        return counts.entrySet().stream()
+                .map(e -> new IdStats(e.getKey().getAppId(), e.getKey().getUriId(), e.getValue()))
+                .sorted(Comparator.comparingLong(IdStats::getHits).reversed())
+                .collect(Collectors.toList());
+    }
+
+    public List<EndpointStats> getTop(TopParamDto params) {
+        if (params.getN() <= 0 || params.getN() > topProperties.getCapacity()) {
+            throw new ValidationException("Параметр n должен быть от 1 до " + topProperties.getCapacity());
+        }
+        LocalDateTime start = parseTime(params.getStart());
+        LocalDateTime end = parseTime(params.getEnd());
+        if (start.isAfter(end)) {
+            throw new ValidationException("Неправильно указано время для поиска!");
+        }
+        Integer appId = params.getApp() == null ? null : hitDictionary.findAppId(params.getApp());
+        if (params.getApp() != null && appId == null) {
+            return new ArrayList<>();
+        }
+        return hitDictionary.toEndpointStats(DataSourceRoute.onReplica(
+                () -> topHitters.getTop(start, end.plusSeconds(1), appId, params.getN())));
+    }
+
+    public List<EndpointTimeSeries> getTimeSeries(TimeSeriesParamDto params) {
+        LocalDateTime start = parseTime(params.getStart());
+        LocalDateTime end = parseTime(params.getEnd());
+        if (start.isAfter(end)) {
+            throw new ValidationException("Неправильно указано время для поиска!");
+        }
+        Granularity granularity;
+        try {
+            granularity = Granularity.valueOf(params.getGranularity().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Неизвестная гранулярность: " + params.getGranularity());
+        }
+        LocalDateTime to = end.plusSeconds(1);
+        if (granularity.bucketsBetween(start, to) > timeSeriesProperties.getMaxBuckets()) {
+            throw new ValidationException("Слишком много корзин в запросе, допускается не больше "
+                    + timeSeriesProperties.getMaxBuckets());
+        }
+        int[] uriIds = params.getUris() == null ? null : hitDictionary.findUriIds(params.getUris());
+        if (uriIds != null && uriIds.length == 0) {
+            return new ArrayList<>();
+        }
+        UniqueMode uniqueMode = params.isUnique() ? toUniqueMode(params.getUniqueMode()) : null;
+        return DataSourceRoute.onReplica(() -> timeSeriesService.getTimeSeries(start, to, granularity, uriIds, uniqueMode));
+    }
+
+    private LocalDateTime parseTime(String time) {
+        return LocalDateTime.parse(URLDecoder.decode(time, StandardCharsets.UTF_8), TIME_FORMAT);
+    }
+
+    /*APPROXIMATE без скетчей считается точно*/
+    private UniqueMode toUniqueMode(String uniqueMode) {
+        if (uniqueMode == null) {
+            return uniqueProperties.getMode();
+        }
+        UniqueMode mode;
+        try {
+            mode = UniqueMode.valueOf(uniqueMode.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Неизвестный режим подсчета уникальных посещений: " + uniqueMode);
+        }
+        return mode == UniqueMode.APPROXIMATE && !sketchService.isEnabled() ? UniqueMode.EXACT : mode;
     }
 }
\ No newline at end of file
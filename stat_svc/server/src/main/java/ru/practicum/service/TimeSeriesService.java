@@ -0,0 +1,139 @@
+package ru.practicum.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import ru.practicum.config.UniqueMode;
+import ru.practicum.dto.EndpointTimeSeries;
+import ru.practicum.dto.TimeSeriesPoint;
+import ru.practicum.exception.ValidationException;
+import ru.practicum.model.AppUriId;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.TimeRange;
+import ru.practicum.model.TimeSegment;
+import ru.practicum.repository.HitJdbcRepository;
+import ru.practicum.repository.RollupJdbcRepository;
+import ru.practicum.repository.SketchJdbcRepository;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*Счетчики по корзинам для графиков. Целые корзины берутся из агрегатов (или скетчей) нужной гранулярности,
+неполные корзины на краях диапазона - из более мелких агрегатов и сырых hits; все вместе - одним запросом*/
+@Service
+@RequiredArgsConstructor
+public class TimeSeriesService {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final RollupJdbcRepository rollupJdbcRepository;
+    private final HitJdbcRepository hitJdbcRepository;
+    private final SketchJdbcRepository sketchJdbcRepository;
+    private final SketchService sketchService;
+    private final BucketPlanner bucketPlanner;
+    private final HitDictionary hitDictionary;
+    private final RawHorizon rawHorizon;
+
+    /*uniqueMode == null - число запросов; поминутных скетчей нет, поэтому APPROXIMATE по минутам считается точно*/
+    public List<EndpointTimeSeries> getTimeSeries(LocalDateTime from, LocalDateTime to, Granularity granularity,
+                                                  int[] uriIds, UniqueMode uniqueMode) {
+        Map<AppUriId, TreeMap<LocalDateTime, Long>> series = new HashMap<>();
+        /*в уплотненном периоде сырых IP нет: уникальные считаются только по скетчам, а их по минутам нет*/
+        boolean compacted = rawHorizon.covers(from);
+        if (uniqueMode != null && compacted && granularity == Granularity.MINUTE) {
+            throw new ValidationException("Уникальные посещения по минутам доступны только начиная с " +
+                    rawHorizon.get().format(TIME_FORMAT));
+        }
+        if (uniqueMode != null && (uniqueMode == UniqueMode.APPROXIMATE || compacted) && granularity != Granularity.MINUTE) {
+            collectApproximate(from, to, granularity, uriIds, series);
+        } else if (uniqueMode != null) {
+            hitJdbcRepository.forEachUniqueTimeSeriesPoint(from, to, granularity, uriIds, rs -> put(series, rs.getInt("app_id"),
+                    rs.getInt("uri_id"), rs.getTimestamp("bucket").toLocalDateTime(), rs.getLong("hits")));
+        } else {
+            List<TimeSegment> segments = new ArrayList<>();
+            TimeRange whole = wholeBuckets(from, to, granularity);
+            for (TimeRange edge : edges(from, to, whole, granularity)) {
+                segments.addAll(bucketPlanner.plan(edge.getFrom(), edge.getTo()));
+            }
+            if (whole != null) {
+                segments.add(new TimeSegment(granularity, whole.getFrom(), whole.getTo()));
+            }
+            rollupJdbcRepository.forEachTimeSeriesPoint(segments, granularity, uriIds, rs -> put(series, rs.getInt("app_id"),
+                    rs.getInt("uri_id"), rs.getTimestamp("bucket").toLocalDateTime(), rs.getLong("hits")));
+        }
+        return toDto(series);
+    }
+
+    private void collectApproximate(LocalDateTime from, LocalDateTime to, Granularity granularity, int[] uriIds,
+                                    Map<AppUriId, TreeMap<LocalDateTime, Long>> series) {
+        Map<AppUriId, Map<LocalDateTime, HyperLogLog>> sketches = new HashMap<>();
+        TimeRange whole = wholeBuckets(from, to, granularity);
+        if (whole != null) {
+            sketchJdbcRepository.forEachSketch(granularity, whole.getFrom(), whole.getTo(), uriIds, rs -> sketches
+                    .computeIfAbsent(new AppUriId(rs.getInt("app_id"), rs.getInt("uri_id")), k -> new HashMap<>())
+                    .merge(rs.getTimestamp("bucket_start").toLocalDateTime(),
+                            HyperLogLog.fromBytes(rs.getBytes("registers")), HyperLogLog::merge));
+        }
+        for (TimeRange edge : edges(from, to, whole, granularity)) {
+            LocalDateTime bucket = granularity.floor(edge.getFrom());
+            sketchService.getSketches(edge.getFrom(), edge.getTo(), uriIds).forEach((key, sketch) -> sketches
+                    .computeIfAbsent(key, k -> new HashMap<>())
+                    .merge(bucket, sketch, HyperLogLog::merge));
+        }
+        sketches.forEach((key, buckets) -> buckets.forEach((bucket, sketch) ->
+                put(series, key.getAppId(), key.getUriId(), bucket, sketch.estimate())));
+    }
+
+    /*целые корзины внутри [from, to), null - таких нет*/
+    private TimeRange wholeBuckets(LocalDateTime from, LocalDateTime to, Granularity granularity) {
+        LocalDateTime first = granularity.ceil(from);
+        LocalDateTime last = granularity.floor(to);
+        return first.isBefore(last) ? new TimeRange(first, last) : null;
+    }
+
+    /*неполные корзины на краях, каждая целиком внутри одной корзины*/
+    private List<TimeRange> edges(LocalDateTime from, LocalDateTime to, TimeRange whole, Granularity granularity) {
+        List<TimeRange> edges = new ArrayList<>();
+        if (whole == null) {
+            LocalDateTime boundary = granularity.ceil(from);
+            if (boundary.isBefore(to) && from.isBefore(boundary)) {
+                edges.add(new TimeRange(from, boundary));
+                edges.add(new TimeRange(boundary, to));
+            } else {
+                edges.add(new TimeRange(from, to));
+            }
+            return edges;
+        }
+        if (from.isBefore(whole.getFrom())) {
+            edges.add(new TimeRange(from, whole.getFrom()));
+        }
+        if (whole.getTo().isBefore(to)) {
+            edges.add(new TimeRange(whole.getTo(), to));
+        }
+        return edges;
+    }
+
+    private void put(Map<AppUriId, TreeMap<LocalDateTime, Long>> series, int appId, int uriId, LocalDateTime bucket,
+                     long hits) {
+        if (hits > 0) {
+            series.computeIfAbsent(new AppUriId(appId, uriId), k -> new TreeMap<>()).merge(bucket, hits, Long::sum);
+        }
+    }
+
+    private List<EndpointTimeSeries> toDto(Map<AppUriId, TreeMap<LocalDateTime, Long>> series) {
+        List<EndpointTimeSeries> result = new ArrayList<>(series.size());
+        series.forEach((key, buckets) -> {
+            List<TimeSeriesPoint> points = new ArrayList<>(buckets.size());
+            buckets.forEach((bucket, hits) -> points.add(new TimeSeriesPoint(bucket.format(TIME_FORMAT), hits)));
+            result.add(new EndpointTimeSeries(hitDictionary.getApp(key.getAppId()), hitDictionary.getUri(key.getUriId()),
+                    points));
+        });
+        result.sort(Comparator.comparing(EndpointTimeSeries::getApp).thenComparing(EndpointTimeSeries::getUri));
+        return result;
+    }
+}
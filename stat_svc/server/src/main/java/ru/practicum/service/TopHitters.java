@@ -0,0 +1,155 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.config.TopProperties;
+import ru.practicum.model.EncodedHit;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.IdStats;
+import ru.practicum.model.TimeSegment;
+import ru.practicum.repository.RollupJdbcRepository;
+import ru.practicum.sketch.SpaceSaving;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+
+/*Самые посещаемые (app, uri): сводки Space-Saving по минутам, часам и суткам в памяти.
+Сводки пополняются после фиксации записи и при старте восстанавливаются из hit_rollups.
+Диапазон запроса раскладывается на корзины; корзины старше срока хранения сводок
+считаются одним запросом к агрегатам. Границы запроса округляются наружу до минуты*/
+@Component
+@Slf4j
+public class TopHitters {
+    private final TopProperties properties;
+    private final RollupJdbcRepository rollupJdbcRepository;
+    private final BucketPlanner bucketPlanner;
+    private final TransactionTemplate readTransaction;
+    private final Map<Granularity, ConcurrentSkipListMap<LocalDateTime, SpaceSaving>> summaries =
+            new EnumMap<>(Granularity.class);
+
+    public TopHitters(TopProperties properties, RollupJdbcRepository rollupJdbcRepository, BucketPlanner bucketPlanner,
+                      PlatformTransactionManager transactionManager) {
+        this.properties = properties;
+        this.rollupJdbcRepository = rollupJdbcRepository;
+        this.bucketPlanner = bucketPlanner;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        for (Granularity granularity : Granularity.values()) {
+            summaries.put(granularity, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    @PostConstruct
+    public void load() {
+        for (Granularity granularity : Granularity.values()) {
+            LocalDateTime from = retainedFrom(granularity);
+            readTransaction.executeWithoutResult(status -> rollupJdbcRepository.forEachBucket(granularity, from, rs -> {
+                SpaceSaving summary = summary(granularity, rs.getTimestamp("bucket_start").toLocalDateTime());
+                summary.offer(key(rs.getInt("app_id"), rs.getInt("uri_id")), rs.getLong("hits"));
+            }));
+        }
+        log.info("Statistic service: сводки самых посещаемых uri загружены, корзин: {}",
+                summaries.values().stream().mapToInt(Map::size).sum());
+    }
+
+    /*вызывается после фиксации транзакции записи*/
+    public void record(List<EncodedHit> hits) {
+        for (Granularity granularity : Granularity.values()) {
+            LocalDateTime from = retainedFrom(granularity);
+            for (EncodedHit hit : hits) {
+                LocalDateTime bucket = granularity.floor(hit.getTimestamp());
+                if (bucket.isBefore(from)) {
+                    continue;
+                }
+                SpaceSaving summary = summary(granularity, bucket);
+                synchronized (summary) {
+                    summary.offer(key(hit.getAppId(), hit.getUriId()), 1);
+                }
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${stats.top.eviction-interval:PT1M}")
+    public void evict() {
+        for (Granularity granularity : Granularity.values()) {
+            summaries.get(granularity).headMap(retainedFrom(granularity)).clear();
+        }
+    }
+
+    public List<IdStats> getTop(LocalDateTime from, LocalDateTime to, Integer appId, int n) {
+        List<SpaceSaving> selected = new ArrayList<>();
+        List<TimeSegment> persisted = new ArrayList<>();
+        for (TimeSegment segment : bucketPlanner.plan(Granularity.MINUTE.floor(from), Granularity.MINUTE.ceil(to))) {
+            Granularity granularity = segment.getGranularity();
+            if (segment.getFrom().isBefore(retainedFrom(granularity))) {
+                persisted.add(segment);
+                continue;
+            }
+            selected.addAll(summaries.get(granularity).subMap(segment.getFrom(), segment.getTo()).values());
+        }
+        if (!persisted.isEmpty()) {
+            /*точные значения из агрегатов в виде сводки: все, что не вошло в первые capacity, не больше последнего*/
+            SpaceSaving summary = new SpaceSaving(properties.getCapacity());
+            for (IdStats row : rollupJdbcRepository.getTop(persisted, appId, properties.getCapacity())) {
+                summary.offer(key(row.getAppId(), row.getUriId()), row.getHits());
+            }
+            selected.add(summary);
+        }
+
+        /*верхняя граница ключа: сумма его счетчиков плюс absentBound тех сводок, где его нет*/
+        Map<Long, long[]> totals = new HashMap<>();
+        long absentTotal = 0;
+        for (SpaceSaving summary : selected) {
+            synchronized (summary) {
+                long absent = summary.absentBound();
+                absentTotal += absent;
+                for (long key : summary.keys()) {
+                    if (appId == null || appId == (int) (key >>> 32)) {
+                        long[] total = totals.computeIfAbsent(key, k -> new long[2]);
+                        total[0] += summary.count(key);
+                        total[1] += absent;
+                    }
+                }
+            }
+        }
+        long absent = absentTotal;
+        return totals.entrySet().stream()
+                .map(e -> new IdStats((int) (e.getKey() >>> 32), (int) (long) e.getKey(),
+                        e.getValue()[0] + absent - e.getValue()[1]))
+                .sorted(Comparator.comparingLong(IdStats::getHits).reversed())
+                .limit(n)
+                .collect(Collectors.toList());
+    }
+
+    private SpaceSaving summary(Granularity granularity, LocalDateTime bucket) {
+        return summaries.get(granularity).computeIfAbsent(bucket, b -> new SpaceSaving(properties.getCapacity()));
+    }
+
+    private LocalDateTime retainedFrom(Granularity granularity) {
+        Duration retention;
+        if (granularity == Granularity.MINUTE) {
+            retention = properties.getMinuteRetention();
+        } else if (granularity == Granularity.HOUR) {
+            retention = properties.getHourRetention();
+        } else {
+            retention = properties.getDayRetention();
+        }
+        return granularity.floor(LocalDateTime.now().minus(retention));
+    }
+
+    private long key(int appId, int uriId) {
+        return ((long) appId << 32) | (uriId & 0xFFFFFFFFL);
+    }
+}
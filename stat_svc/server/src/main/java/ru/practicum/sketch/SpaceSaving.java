@@ -0,0 +1,65 @@
+package ru.practicum.sketch;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Сводка Space-Saving для поиска самых частых ключей.
+ * Хранит не больше capacity счетчиков; новый ключ при заполненной сводке вытесняет ключ с минимальным счетчиком
+ * и наследует его значение как погрешность. Счетчик - верхняя граница истинной частоты, count - error - нижняя.
+ * Любой ключ с частотой больше total / capacity гарантированно присутствует в сводке.
+ * Не потокобезопасна.
+ */
+public class SpaceSaving {
+    private final int capacity;
+    private final Map<Long, long[]> counters;
+
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    public void offer(long key, long weight) {
+        long[] counter = counters.get(key);
+        if (counter != null) {
+            counter[0] += weight;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(key, new long[]{weight, 0});
+            return;
+        }
+        long minKey = 0;
+        long min = Long.MAX_VALUE;
+        for (Map.Entry<Long, long[]> entry : counters.entrySet()) {
+            if (entry.getValue()[0] < min) {
+                min = entry.getValue()[0];
+                minKey = entry.getKey();
+            }
+        }
+        counters.remove(minKey);
+        counters.put(key, new long[]{min + weight, min});
+    }
+
+    /*верхняя граница частоты ключа, которого нет в сводке*/
+    public long absentBound() {
+        if (counters.size() < capacity) {
+            return 0;
+        }
+        long min = Long.MAX_VALUE;
+        for (long[] counter : counters.values()) {
+            min = Math.min(min, counter[0]);
+        }
+        return min;
+    }
+
+    /*0 - ключа нет в сводке*/
+    public long count(long key) {
+        long[] counter = counters.get(key);
+        return counter == null ? 0 : counter[0];
+    }
+
+    public Iterable<Long> keys() {
+        return counters.keySet();
+    }
+}
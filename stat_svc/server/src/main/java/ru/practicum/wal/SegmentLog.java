@@ -0,0 +1,213 @@
+package ru.practicum.wal;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Журнал из сегментов, отображенных в память. Позиция записи сквозная: база сегмента (имя файла) плюс смещение в нем,
+ * база следующего сегмента равна концу предыдущего.
+ * Групповой сброс на диск: поток, вызвавший sync, сбрасывает все записанное к этому моменту,
+ * остальные ждут его и подтверждаются одним force.
+ * При fsync = false запись подтверждается сразу: данные в отображенной памяти переживают падение JVM, но не ОС.
+ * Идентификатор журнала меняется при создании журнала с нуля, чтобы старые контрольные точки не применялись к новым позициям.
+ */
+public class SegmentLog {
+    private static final String SUFFIX = ".wal";
+    private static final String ID_FILE = "log.id";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long maxSize;
+    private final boolean fsync;
+    private final ConcurrentSkipListMap<Long, WalSegment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+    @Getter
+    private String id;
+    private WalSegment active;
+    private int activeOffset;
+    private volatile long written;
+    private volatile long durable;
+    private boolean syncing;
+
+    private SegmentLog(Path directory, int segmentSize, long maxSize, boolean fsync) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSize = maxSize;
+        this.fsync = fsync;
+    }
+
+    public static SegmentLog open(Path directory, int segmentSize, long maxSize, boolean fsync) throws IOException {
+        SegmentLog log = new SegmentLog(directory, segmentSize, maxSize, fsync);
+        log.load();
+        return log;
+    }
+
+    private void load() throws IOException {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long base = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+                segments.put(base, WalSegment.open(file, base, segmentSize));
+            }
+        }
+        /*без файла идентификатора оставшиеся сегменты переигрываются целиком: возможны повторы, но не потери*/
+        Path idFile = directory.resolve(ID_FILE);
+        if (segments.isEmpty() || !Files.exists(idFile)) {
+            id = UUID.randomUUID().toString();
+            Files.write(idFile, id.getBytes(StandardCharsets.UTF_8));
+        } else {
+            id = new String(Files.readAllBytes(idFile), StandardCharsets.UTF_8).trim();
+        }
+        if (segments.isEmpty()) {
+            segments.put(0L, WalSegment.open(path(0), 0, segmentSize));
+        }
+        active = segments.lastEntry().getValue();
+        activeOffset = active.recover();
+        active.force();
+        written = active.getBase() + activeOffset;
+        durable = written;
+    }
+
+    public int getMaxRecordSize() {
+        return segmentSize - WalSegment.HEADER;
+    }
+
+    /*позиция конца записи; -1, если журнал достиг maxSize*/
+    public synchronized long append(byte[] data) throws IOException {
+        if (data.length > getMaxRecordSize()) {
+            throw new IllegalArgumentException("Запись длиной " + data.length + " не помещается в сегмент журнала");
+        }
+        int end = active.append(activeOffset, data);
+        if (end < 0) {
+            long next = active.getBase() + active.getCapacity();
+            if (next + segmentSize - segments.firstKey() > maxSize) {
+                return -1;
+            }
+            if (fsync) {
+                active.force();
+            }
+            active = WalSegment.open(path(next), next, segmentSize);
+            segments.put(next, active);
+            end = active.append(0, data);
+        }
+        activeOffset = end;
+        written = active.getBase() + end;
+        return written;
+    }
+
+    /*возвращается, когда все записи до position сброшены на диск*/
+    public void sync(long position) throws InterruptedException {
+        if (!fsync) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            while (durable < position) {
+                if (syncing) {
+                    synced.await();
+                    continue;
+                }
+                syncing = true;
+                syncLock.unlock();
+                long target;
+                try {
+                    target = force();
+                } finally {
+                    syncLock.lock();
+                    syncing = false;
+                    synced.signalAll();
+                }
+                durable = Math.max(durable, target);
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /*предыдущие сегменты сбрасываются при переходе на новый, поэтому достаточно текущего*/
+    private long force() {
+        long target;
+        WalSegment segment;
+        synchronized (this) {
+            target = written;
+            segment = active;
+        }
+        segment.force();
+        return target;
+    }
+
+    /*первая подтвержденная запись, начиная с position; null, если таких пока нет*/
+    public Entry read(long position) {
+        long limit = fsync ? durable : written;
+        while (position < limit) {
+            Map.Entry<Long, WalSegment> floor = segments.floorEntry(position);
+            if (floor == null) {
+                position = segments.firstKey();
+                continue;
+            }
+            WalSegment segment = floor.getValue();
+            long offset = position - segment.getBase();
+            byte[] data = offset < segment.getCapacity() ? segment.read((int) offset) : null;
+            if (data != null) {
+                return new Entry(data, position + WalSegment.HEADER + data.length);
+            }
+            /*конец заполненного сегмента*/
+            Long next = segments.higherKey(segment.getBase());
+            if (next == null) {
+                return null;
+            }
+            position = next;
+        }
+        return null;
+    }
+
+    public long getStart() {
+        return segments.firstKey();
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    /*удаляет сегменты, целиком лежащие до position; текущий сегмент не удаляется*/
+    public void deleteBefore(long position) throws IOException {
+        for (WalSegment segment : segments.values()) {
+            synchronized (this) {
+                if (segment == active || segment.getBase() + segment.getCapacity() > position) {
+                    return;
+                }
+                segments.remove(segment.getBase());
+            }
+            segment.delete();
+        }
+    }
+
+    public synchronized void close() {
+        active.force();
+        durable = written;
+    }
+
+    private Path path(long base) {
+        return directory.resolve(String.format("%020d%s", base, SUFFIX));
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Entry {
+        private final byte[] data;
+        private final long next;
+    }
+}
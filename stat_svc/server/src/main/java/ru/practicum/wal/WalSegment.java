@@ -0,0 +1,105 @@
+package ru.practicum.wal;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+/*Файл сегмента журнала фиксированного размера, отображенный в память.
+Запись: длина (int), CRC32 (int), данные. Нулевая длина - конец данных: файл создается заполненным нулями*/
+class WalSegment {
+    static final int HEADER = 8;
+
+    private final Path path;
+    private final long base;
+    private final MappedByteBuffer buffer;
+
+    private WalSegment(Path path, long base, MappedByteBuffer buffer) {
+        this.path = path;
+        this.base = base;
+        this.buffer = buffer;
+    }
+
+    /*существующий файл открывается с его длиной, новый создается длиной capacity*/
+    static WalSegment open(Path path, long base, int capacity) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            if (file.length() == 0) {
+                file.setLength(capacity);
+            }
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+            return new WalSegment(path, base, buffer);
+        }
+    }
+
+    long getBase() {
+        return base;
+    }
+
+    int getCapacity() {
+        return buffer.capacity();
+    }
+
+    /*вызывается под блокировкой журнала; -1, если запись не помещается*/
+    int append(int offset, byte[] data) {
+        int end = offset + HEADER + data.length;
+        if (end > buffer.capacity()) {
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ByteBuffer target = buffer.duplicate();
+        target.position(offset + HEADER);
+        target.put(data);
+        target.putInt(offset + 4, (int) crc.getValue());
+        /*длина пишется последней; запись, попавшая на диск не целиком, отсекается по CRC*/
+        target.putInt(offset, data.length);
+        return end;
+    }
+
+    /*null - конец данных или поврежденная (недописанная) запись*/
+    byte[] read(int offset) {
+        if (offset + HEADER > buffer.capacity()) {
+            return null;
+        }
+        ByteBuffer source = buffer.duplicate();
+        int length = source.getInt(offset);
+        if (length <= 0 || offset + HEADER + length > buffer.capacity()) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        source.position(offset + HEADER);
+        source.get(data);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return (int) crc.getValue() == source.getInt(offset + 4) ? data : null;
+    }
+
+    /*конец последней целой записи; хвост после него обнуляется, чтобы новые записи не смешивались со старыми обрывками*/
+    int recover() {
+        int offset = 0;
+        byte[] data;
+        while ((data = read(offset)) != null) {
+            offset += HEADER + data.length;
+        }
+        ByteBuffer target = buffer.duplicate();
+        for (int position = offset; position < target.capacity(); position++) {
+            if (target.get(position) != 0) {
+                target.put(position, (byte) 0);
+            }
+        }
+        return offset;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    /*отображение освобождается сборщиком мусора, удаление файла ему не мешает*/
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+}
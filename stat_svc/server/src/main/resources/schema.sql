@@ -1,8 +1,129 @@
+CREATE OR REPLACE FUNCTION ewm_rename_legacy_hits() RETURNS void AS '
+BEGIN
+  IF EXISTS (SELECT 1 FROM pg_class WHERE relname = ''hits'' AND relkind = ''r''
+             AND relnamespace = ''public''::regnamespace) THEN
+    ALTER TABLE hits RENAME TO hits_legacy;
+    ALTER TABLE hits_legacy RENAME CONSTRAINT pk_hits TO pk_hits_legacy;
+  END IF;
+END;
+' LANGUAGE plpgsql;
+
+SELECT ewm_rename_legacy_hits();
+
+CREATE TABLE IF NOT EXISTS hit_apps (
+  id INT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+  name VARCHAR(255) NOT NULL,
+  CONSTRAINT pk_hit_apps PRIMARY KEY (id),
+  CONSTRAINT uq_hit_apps_name UNIQUE (name)
+);
+
+CREATE TABLE IF NOT EXISTS hit_uris (
+  id INT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+  name VARCHAR(255) NOT NULL,
+  CONSTRAINT pk_hit_uris PRIMARY KEY (id),
+  CONSTRAINT uq_hit_uris_name UNIQUE (name)
+);
+
 CREATE TABLE IF NOT EXISTS hits (
   id BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
-  app VARCHAR(255) NOT NULL,
-  uri VARCHAR(255) NOT NULL,
-  ip VARCHAR(255) NOT NULL,
-  timestamp DATE NOT NULL,
-  CONSTRAINT pk_hits PRIMARY KEY (id)
-);
\ No newline at end of file
+  app_id INT NOT NULL,
+  uri_id INT NOT NULL,
+  ip BYTEA NOT NULL,
+  timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  CONSTRAINT pk_hits PRIMARY KEY (id, timestamp)
+) PARTITION BY RANGE (timestamp);
+
+CREATE TABLE IF NOT EXISTS hits_default PARTITION OF hits DEFAULT;
+
+CREATE INDEX IF NOT EXISTS idx_hits_uri_timestamp ON hits (uri_id, timestamp);
+
+CREATE INDEX IF NOT EXISTS idx_hits_timestamp ON hits (timestamp);
+
+CREATE OR REPLACE FUNCTION ewm_ip_bytes(ip TEXT) RETURNS BYTEA AS '
+DECLARE
+  address INET;
+  encoded BYTEA;
+BEGIN
+  BEGIN
+    address := ip::inet;
+  EXCEPTION WHEN OTHERS THEN
+    address := NULL;
+  END;
+  IF address IS NOT NULL AND family(address) = 4 AND masklen(address) = 32 THEN
+    RETURN ''\x00000000000000000000ffff''::bytea || substring(inet_send(address) FROM 5);
+  END IF;
+  IF address IS NOT NULL AND family(address) = 6 AND masklen(address) = 128 THEN
+    RETURN substring(inet_send(address) FROM 5);
+  END IF;
+  encoded := ''\xff''::bytea || convert_to(ip, ''UTF8'');
+  IF length(encoded) = 16 THEN
+    encoded := ''\xff''::bytea || encoded;
+  END IF;
+  RETURN encoded;
+END;
+' LANGUAGE plpgsql IMMUTABLE;
+
+CREATE OR REPLACE FUNCTION ewm_migrate_legacy_hits() RETURNS void AS '
+BEGIN
+  IF EXISTS (SELECT 1 FROM pg_class WHERE relname = ''hits_legacy'' AND relkind = ''r''
+             AND relnamespace = ''public''::regnamespace) THEN
+    INSERT INTO hit_apps (name) SELECT DISTINCT app FROM hits_legacy ON CONFLICT (name) DO NOTHING;
+    INSERT INTO hit_uris (name) SELECT DISTINCT uri FROM hits_legacy ON CONFLICT (name) DO NOTHING;
+    INSERT INTO hits (id, app_id, uri_id, ip, timestamp)
+    SELECT l.id, a.id, u.id, ewm_ip_bytes(l.ip), l.timestamp
+    FROM hits_legacy l
+    JOIN hit_apps a ON a.name = l.app
+    JOIN hit_uris u ON u.name = l.uri;
+    PERFORM setval(pg_get_serial_sequence(''hits'', ''id''), COALESCE((SELECT MAX(id) FROM hits), 0) + 1, false);
+    DROP TABLE hits_legacy;
+  END IF;
+END;
+' LANGUAGE plpgsql;
+
+SELECT ewm_migrate_legacy_hits();
+
+CREATE TABLE IF NOT EXISTS hit_rollups (
+  granularity VARCHAR(8) NOT NULL,
+  bucket_start TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  app_id INT NOT NULL,
+  uri_id INT NOT NULL,
+  hits BIGINT NOT NULL,
+  CONSTRAINT pk_hit_rollups PRIMARY KEY (granularity, bucket_start, app_id, uri_id)
+);
+
+INSERT INTO hit_rollups (granularity, bucket_start, app_id, uri_id, hits)
+SELECT g.granularity, date_trunc(lower(g.granularity), h.timestamp), h.app_id, h.uri_id, COUNT(*)
+FROM hits h CROSS JOIN (VALUES ('MINUTE'), ('HOUR'), ('DAY')) AS g(granularity)
+WHERE NOT EXISTS (SELECT 1 FROM hit_rollups)
+GROUP BY 1, 2, 3, 4;
+
+CREATE TABLE IF NOT EXISTS hit_sketches (
+  granularity VARCHAR(8) NOT NULL,
+  bucket_start TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  app_id INT NOT NULL,
+  uri_id INT NOT NULL,
+  registers BYTEA NOT NULL,
+  CONSTRAINT pk_hit_sketches PRIMARY KEY (granularity, bucket_start, app_id, uri_id)
+);
+
+CREATE TABLE IF NOT EXISTS hit_sketch_backfill (
+  id INT NOT NULL,
+  completed BOOLEAN NOT NULL,
+  CONSTRAINT pk_hit_sketch_backfill PRIMARY KEY (id)
+);
+
+INSERT INTO hit_sketch_backfill (id, completed) VALUES (1, FALSE) ON CONFLICT (id) DO NOTHING;
+
+CREATE TABLE IF NOT EXISTS wal_checkpoints (
+  log_id VARCHAR(36) NOT NULL,
+  position BIGINT NOT NULL,
+  CONSTRAINT pk_wal_checkpoints PRIMARY KEY (log_id)
+);
+
+CREATE TABLE IF NOT EXISTS hit_compaction (
+  id INT NOT NULL,
+  raw_horizon TIMESTAMP WITHOUT TIME ZONE,
+  CONSTRAINT pk_hit_compaction PRIMARY KEY (id)
+);
+
+INSERT INTO hit_compaction (id, raw_horizon) VALUES (1, NULL) ON CONFLICT (id) DO NOTHING;
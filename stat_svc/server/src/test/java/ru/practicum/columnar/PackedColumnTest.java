@@ -0,0 +1,84 @@
+package ru.practicum.columnar;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PackedColumnTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "0, 1",
+            "255, 1",
+            "256, 2",
+            "65535, 2",
+            "65536, 4",
+            "2147483647, 4",
+            "2147483648, 8",
+            "9223372036854775807, 8"
+    })
+    void picksWidthByMaxValueAndDecodesIt(long max, int width) {
+        long[] values = {0, 1, max};
+        ByteBuffer buffer = ByteBuffer.allocate(PackedColumn.size(values, values.length));
+        PackedColumn.write(buffer, values, values.length);
+
+        assertEquals(1 + values.length * width, buffer.position());
+        buffer.flip();
+        PackedColumn column = PackedColumn.read(buffer, values.length);
+        assertEquals(buffer.limit(), buffer.position());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], column.get(i));
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"255", "65535", "2147483647"})
+    void unpacksBlockIntoInts(long max) {
+        long[] values = {max, 0, 1, max - 1, max};
+        ByteBuffer buffer = ByteBuffer.allocate(PackedColumn.size(values, values.length));
+        PackedColumn.write(buffer, values, values.length);
+        buffer.flip();
+        PackedColumn column = PackedColumn.read(buffer, values.length);
+
+        int[] block = new int[3];
+        column.get(1, block, block.length);
+        assertArrayEquals(new int[]{0, 1, (int) (max - 1)}, block);
+    }
+
+    @Test
+    void readsColumnsWrittenBackToBack() {
+        long[] narrow = {3, 200, 7};
+        long[] wide = {70000, 1, 4_000_000_000L};
+        ByteBuffer buffer = ByteBuffer.allocate(PackedColumn.size(narrow, 3) + PackedColumn.size(wide, 3));
+        PackedColumn.write(buffer, narrow, 3);
+        PackedColumn.write(buffer, wide, 3);
+        buffer.flip();
+
+        PackedColumn first = PackedColumn.read(buffer, 3);
+        PackedColumn second = PackedColumn.read(buffer, 3);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(narrow[i], first.get(i));
+            assertEquals(wide[i], second.get(i));
+        }
+    }
+
+    @Test
+    void lowerBoundFindsFirstNotLessValue() {
+        long[] sorted = {10, 20, 20, 300, 70000};
+        ByteBuffer buffer = ByteBuffer.allocate(PackedColumn.size(sorted, sorted.length));
+        PackedColumn.write(buffer, sorted, sorted.length);
+        buffer.flip();
+        PackedColumn column = PackedColumn.read(buffer, sorted.length);
+
+        assertEquals(0, column.lowerBound(0));
+        assertEquals(1, column.lowerBound(20));
+        assertEquals(3, column.lowerBound(21));
+        assertEquals(4, column.lowerBound(70000));
+        assertEquals(5, column.lowerBound(70001));
+    }
+}
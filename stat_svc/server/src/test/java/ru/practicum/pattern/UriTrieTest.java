@@ -0,0 +1,79 @@
+package ru.practicum.pattern;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import ru.practicum.exception.ValidationException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UriTrieTest {
+    private final UriTrie trie = new UriTrie();
+
+    @BeforeEach
+    void setUp() {
+        trie.add("/events", 1);
+        trie.add("/events/1", 2);
+        trie.add("/events/15", 3);
+        trie.add("/events/1/comments", 4);
+        trie.add("/events/2/comments", 5);
+        trie.add("/events/", 6);
+        trie.add("/users/1", 7);
+        trie.add("/users/1/events/1", 8);
+    }
+
+    @Test
+    void singleStarMatchesWithinOneSegment() {
+        assertArrayEquals(new int[]{2, 3, 6}, find("/events/*"));
+        assertArrayEquals(new int[]{2, 3}, find("/events/1*"));
+        assertArrayEquals(new int[]{4, 5}, find("/events/*/comments"));
+        assertArrayEquals(new int[]{3}, find("/events/*5"));
+    }
+
+    @Test
+    void doubleStarMatchesAnyNumberOfSegments() {
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5, 6}, find("/events/**"));
+        assertArrayEquals(new int[]{4, 5}, find("/events/**/comments"));
+        assertArrayEquals(new int[]{2, 8}, find("/**/events/1"));
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5, 6, 7, 8}, find("/**"));
+    }
+
+    @Test
+    void literalPatternMatchesExactUri() {
+        assertArrayEquals(new int[]{2}, find("/events/1"));
+        assertArrayEquals(new int[0], find("/events/3"));
+        assertArrayEquals(new int[0], find("/events/1/comments/**/x"));
+    }
+
+    @Test
+    @Timeout(5)
+    void manyDoubleStarsDoNotExplode() {
+        StringBuilder uri = new StringBuilder();
+        for (int i = 0; i < 30; i++) {
+            uri.append("/a");
+            trie.add(uri.toString(), 100 + i);
+        }
+
+        String stars = "/**/**/**/**/**/**/**/**";
+        assertArrayEquals(new int[0], find(stars + "/b"));
+        assertArrayEquals(new int[]{129}, find(stars + uri));
+    }
+
+    @Test
+    void doubleStarMustBeWholeSegment() {
+        assertThrows(ValidationException.class, () -> UriPattern.compile("/events/1**"));
+    }
+
+    @Test
+    void onlyStarMakesPattern() {
+        assertTrue(UriPattern.isPattern("/events/*"));
+        assertFalse(UriPattern.isPattern("/events/1"));
+    }
+
+    private int[] find(String pattern) {
+        return trie.find(UriPattern.compile(pattern));
+    }
+}
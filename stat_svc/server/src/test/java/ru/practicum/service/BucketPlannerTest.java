@@ -0,0 +1,140 @@
+package ru.practicum.service;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.model.Granularity;
+import ru.practicum.model.TimeSegment;
+import ru.practicum.repository.CompactionJdbcRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class BucketPlannerTest {
+    private static final LocalDateTime DAY = LocalDateTime.of(2026, 1, 1, 0, 0);
+
+    private final RawHorizon rawHorizon = new RawHorizon(mock(CompactionJdbcRepository.class));
+    private final BucketPlanner planner = new BucketPlanner(rawHorizon);
+
+    @Test
+    void alignedRangeIsOneBucketSegment() {
+        assertEquals(List.of("DAY " + DAY + " " + DAY.plusDays(2)), describe(planner.plan(DAY, DAY.plusDays(2))));
+        assertEquals(List.of("HOUR " + DAY.plusHours(3) + " " + DAY.plusHours(5)),
+                describe(planner.plan(DAY.plusHours(3), DAY.plusHours(5))));
+    }
+
+    @Test
+    void raggedEdgesStepDownToRawHits() {
+        LocalDateTime from = DAY.minusMinutes(1).minusSeconds(30);
+        LocalDateTime to = DAY.plusDays(1).plusHours(1).plusMinutes(2).plusSeconds(10);
+
+        assertEquals(List.of(
+                "RAW " + from + " " + DAY.minusMinutes(1),
+                "MINUTE " + DAY.minusMinutes(1) + " " + DAY,
+                "DAY " + DAY + " " + DAY.plusDays(1),
+                "HOUR " + DAY.plusDays(1) + " " + DAY.plusDays(1).plusHours(1),
+                "MINUTE " + DAY.plusDays(1).plusHours(1) + " " + DAY.plusDays(1).plusHours(1).plusMinutes(2),
+                "RAW " + DAY.plusDays(1).plusHours(1).plusMinutes(2) + " " + to
+        ), describe(planner.plan(from, to)));
+    }
+
+    @Test
+    void rangeInsideOneMinuteIsRaw() {
+        LocalDateTime from = DAY.plusSeconds(10);
+
+        assertEquals(List.of("RAW " + from + " " + DAY.plusSeconds(50)), describe(planner.plan(from, DAY.plusSeconds(50))));
+    }
+
+    @Test
+    void emptyRangeHasNoSegments() {
+        assertTrue(planner.plan(DAY, DAY).isEmpty());
+        assertTrue(planner.plan(DAY.plusHours(1), DAY).isEmpty());
+    }
+
+    @Test
+    void coarserFinestLeavesWiderRawEdges() {
+        LocalDateTime from = DAY.plusMinutes(30);
+        LocalDateTime to = DAY.plusHours(3).plusMinutes(10);
+
+        assertEquals(List.of(
+                "RAW " + from + " " + DAY.plusHours(1),
+                "HOUR " + DAY.plusHours(1) + " " + DAY.plusHours(3),
+                "RAW " + DAY.plusHours(3) + " " + to
+        ), describe(planner.plan(from, to, Granularity.HOUR)));
+    }
+
+    @Test
+    void rawEdgeBeforeHorizonWidensToFinestBucket() {
+        rawHorizon.set(DAY.plusHours(2));
+        LocalDateTime from = DAY.plusSeconds(30);
+        LocalDateTime to = DAY.plusHours(3).plusSeconds(20);
+
+        assertEquals(List.of(
+                "MINUTE " + DAY + " " + DAY.plusMinutes(1),
+                "MINUTE " + DAY.plusMinutes(1) + " " + DAY.plusHours(1),
+                "HOUR " + DAY.plusHours(1) + " " + DAY.plusHours(3),
+                "RAW " + DAY.plusHours(3) + " " + to
+        ), describe(planner.plan(from, to)));
+    }
+
+    @Test
+    void rawSegmentAcrossHorizonIsSplitAtHorizon() {
+        rawHorizon.set(DAY);
+        LocalDateTime from = DAY.minusSeconds(20);
+        LocalDateTime to = DAY.plusSeconds(40);
+
+        assertEquals(List.of(
+                "MINUTE " + DAY.minusMinutes(1) + " " + DAY,
+                "RAW " + DAY + " " + to
+        ), describe(planner.plan(from, to)));
+    }
+
+    @Test
+    void rangeAfterHorizonIsNotChanged() {
+        LocalDateTime from = DAY.plusHours(3).plusSeconds(10);
+        LocalDateTime to = DAY.plusHours(5).plusSeconds(10);
+        List<String> expected = describe(planner.plan(from, to));
+
+        rawHorizon.set(DAY);
+
+        assertEquals(expected, describe(planner.plan(from, to)));
+    }
+
+    @Test
+    void segmentsTileRangeWithoutGapsAndRawStaysUnderMinute() {
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            LocalDateTime from = DAY.plusSeconds(random.nextInt(3 * 86400));
+            LocalDateTime to = from.plusSeconds(random.nextInt(3 * 86400));
+            List<TimeSegment> segments = planner.plan(from, to);
+
+            LocalDateTime cursor = from;
+            int raw = 0;
+            for (TimeSegment segment : segments) {
+                assertEquals(cursor, segment.getFrom());
+                assertTrue(segment.getFrom().isBefore(segment.getTo()));
+                if (segment.isRaw()) {
+                    raw++;
+                    assertTrue(segment.getTo().isBefore(segment.getFrom().plusMinutes(1)));
+                } else {
+                    Granularity granularity = segment.getGranularity();
+                    assertEquals(segment.getFrom(), granularity.floor(segment.getFrom()));
+                    assertEquals(segment.getTo(), granularity.floor(segment.getTo()));
+                }
+                cursor = segment.getTo();
+            }
+            assertEquals(to, cursor);
+            assertTrue(raw <= 2);
+        }
+    }
+
+    private static List<String> describe(List<TimeSegment> segments) {
+        return segments.stream()
+                .map(s -> (s.isRaw() ? "RAW" : s.getGranularity().name()) + " " + s.getFrom() + " " + s.getTo())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,137 @@
+package ru.practicum.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.practicum.config.IngestMode;
+import ru.practicum.config.IngestProperties;
+import ru.practicum.dto.BulkHitsResponse;
+import ru.practicum.dto.EndpointHit;
+import ru.practicum.dto.HitsBatchResult;
+import ru.practicum.exception.HitsLoadException;
+
+import javax.validation.Validation;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HitBulkLoaderTest {
+    private final HitWriter hitWriter = mock(HitWriter.class);
+    private final HitWriteAheadLog hitWriteAheadLog = mock(HitWriteAheadLog.class);
+    private final IngestProperties properties = new IngestProperties();
+    private final List<List<String>> saved = new ArrayList<>();
+    private HitBulkLoader loader;
+
+    @BeforeEach
+    void setUp() {
+        properties.setBatchSize(2);
+        doAnswer(invocation -> {
+            List<EndpointHit> batch = invocation.getArgument(0);
+            saved.add(batch.stream().map(EndpointHit::getUri).collect(Collectors.toList()));
+            return null;
+        }).when(hitWriter).write(anyList());
+        loader = new HitBulkLoader(new ObjectMapper(), Validation.buildDefaultValidatorFactory().getValidator(),
+                hitWriter, mock(HitIngestQueue.class), hitWriteAheadLog, properties);
+    }
+
+    @Test
+    void writesNdjsonInBatches() throws IOException {
+        BulkHitsResponse response = load(hit("/1") + "\n" + hit("/2") + "\n" + hit("/3") + "\n" + hit("/4") + "\n" + hit("/5"));
+
+        assertEquals(5, response.getAccepted());
+        assertEquals(0, response.getRejected());
+        assertEquals(List.of(List.of("/1", "/2"), List.of("/3", "/4"), List.of("/5")), saved);
+        assertEquals(List.of(2, 2, 1), accepted(response));
+    }
+
+    @Test
+    void writesJsonArray() throws IOException {
+        BulkHitsResponse response = load("[" + hit("/1") + ", " + hit("/2") + "]");
+
+        assertEquals(2, response.getAccepted());
+        assertEquals(List.of(List.of("/1", "/2")), saved);
+    }
+
+    @Test
+    void countsInvalidRecordsInTheirBatch() throws IOException {
+        BulkHitsResponse response = load(hit("/1") + "\n"
+                + "{\"app\":\"ewm\",\"uri\":\"/2\",\"timestamp\":\"2026-01-01 10:00:00\"}\n"
+                + "{\"app\":\"ewm\",\"uri\":\"/3\",\"ip\":\"10.0.0.1\",\"timestamp\":\"01.01.2026\"}\n"
+                + "{\"app\":[1],\"uri\":\"/4\"}\n"
+                + hit("/5"));
+
+        assertEquals(2, response.getAccepted());
+        assertEquals(3, response.getRejected());
+        assertEquals(List.of(List.of("/1"), List.of("/5")), saved);
+        assertEquals(List.of(1, 1), accepted(response));
+        assertEquals(List.of(1, 2), response.getBatches().stream()
+                .map(HitsBatchResult::getRejected).collect(Collectors.toList()));
+    }
+
+    @Test
+    void stopsAtMalformedJsonAndKeepsWrittenBatches() throws IOException {
+        BulkHitsResponse response = load(hit("/1") + "\n" + hit("/2") + "\n" + hit("/3") + "\n{\"app\":\"ewm\",\"uri\":");
+
+        assertEquals(3, response.getAccepted());
+        assertEquals(1, response.getRejected());
+        assertEquals(List.of(List.of("/1", "/2"), List.of("/3")), saved);
+    }
+
+    @Test
+    void failedWriteReportsRecordToResumeFrom() {
+        doAnswer(invocation -> {
+            List<EndpointHit> batch = invocation.getArgument(0);
+            saved.add(batch.stream().map(EndpointHit::getUri).collect(Collectors.toList()));
+            return null;
+        }).doThrow(new IllegalStateException("БД недоступна")).when(hitWriter).write(anyList());
+
+        HitsLoadException e = assertThrows(HitsLoadException.class, () -> load(hit("/1") + "\n" + hit("/2") + "\n"
+                + "{\"app\":\"ewm\",\"uri\":\"/3\"}\n" + hit("/4") + "\n" + hit("/5")));
+
+        BulkHitsResponse partial = e.getPartial();
+        assertEquals(List.of(List.of("/1", "/2")), saved);
+        assertEquals(2, partial.getAccepted());
+        assertEquals(1, partial.getRejected());
+        assertEquals(3, partial.getProcessed());
+        assertNotNull(partial.getError());
+    }
+
+    @Test
+    void walModeSyncsWrittenPartOfFailedBatch() {
+        properties.setMode(IngestMode.WAL);
+        when(hitWriteAheadLog.write(any())).thenReturn(1L, 2L, 3L).thenThrow(new IllegalStateException("диск заполнен"));
+
+        HitsLoadException e = assertThrows(HitsLoadException.class,
+                () -> load(hit("/1") + "\n" + hit("/2") + "\n" + hit("/3") + "\n" + hit("/4")));
+
+        verify(hitWriteAheadLog).sync(2L);
+        verify(hitWriteAheadLog).sync(3L);
+        assertEquals(3, e.getPartial().getAccepted());
+        assertEquals(3, e.getPartial().getProcessed());
+    }
+
+    private BulkHitsResponse load(String body) throws IOException {
+        return loader.load(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static List<Integer> accepted(BulkHitsResponse response) {
+        return response.getBatches().stream().map(HitsBatchResult::getAccepted).collect(Collectors.toList());
+    }
+
+    private static String hit(String uri) {
+        return "{\"app\":\"ewm\",\"uri\":\"" + uri + "\",\"ip\":\"10.0.0.1\",\"timestamp\":\"2026-01-01 10:00:00\"}";
+    }
+}
@@ -0,0 +1,97 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import ru.practicum.config.IngestMode;
+import ru.practicum.config.IngestProperties;
+import ru.practicum.dto.EndpointHit;
+import ru.practicum.exception.IngestOverloadException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class HitIngestQueueTest {
+    private final HitWriter hitWriter = mock(HitWriter.class);
+    private final IngestProperties properties = new IngestProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> written = new CopyOnWriteArrayList<>();
+    private final AtomicInteger failures = new AtomicInteger();
+    private HitIngestQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        properties.setMode(IngestMode.ASYNC);
+        properties.setFlushInterval(Duration.ofMillis(10));
+        properties.setWriteRetryInterval(Duration.ofMillis(10));
+        properties.setShutdownTimeout(Duration.ofSeconds(5));
+        doAnswer(invocation -> {
+            if (failures.getAndDecrement() > 0) {
+                throw new DataAccessResourceFailureException("БД недоступна");
+            }
+            List<EndpointHit> batch = invocation.getArgument(0);
+            batch.forEach(hit -> written.add(hit.getUri()));
+            return null;
+        }).when(hitWriter).write(anyList());
+        queue = new HitIngestQueue(properties, hitWriter, meterRegistry);
+    }
+
+    @Test
+    void retriesFailedBatchInsteadOfDroppingIt() {
+        failures.set(3);
+        queue.start();
+        queue.enqueue(hit("/1"));
+        queue.enqueue(hit("/2"));
+        queue.stop();
+
+        assertEquals(List.of("/1", "/2"), written);
+        assertEquals(0, dropped("write_failed"));
+    }
+
+    @Test
+    void dropsBatchOnlyAfterShutdownTimeout() {
+        failures.set(Integer.MAX_VALUE);
+        properties.setShutdownTimeout(Duration.ofMillis(50));
+        queue.start();
+        queue.enqueue(hit("/1"));
+        queue.stop();
+
+        assertEquals(List.of(), written);
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (dropped("write_failed") == 0 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(1, dropped("write_failed"));
+    }
+
+    @Test
+    void rejectsHitsAfterStop() {
+        queue.start();
+        queue.enqueue(hit("/1"));
+        queue.stop();
+
+        assertThrows(IngestOverloadException.class, () -> queue.enqueue(hit("/2")));
+        assertEquals(List.of("/1"), written);
+    }
+
+    private double dropped(String reason) {
+        return meterRegistry.get("stats.ingest.dropped").tag("reason", reason).counter().count();
+    }
+
+    private static EndpointHit hit(String uri) {
+        EndpointHit hit = new EndpointHit();
+        hit.setApp("ewm");
+        hit.setUri(uri);
+        hit.setIp("10.0.0.1");
+        return hit;
+    }
+}
@@ -0,0 +1,86 @@
+package ru.practicum.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.practicum.config.PartitionProperties;
+import ru.practicum.model.Granularity;
+import ru.practicum.repository.PartitionJdbcRepository;
+import ru.practicum.repository.RollupJdbcRepository;
+import ru.practicum.repository.SketchJdbcRepository;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HitPartitionManagerTest {
+    private final PartitionJdbcRepository partitionJdbcRepository = mock(PartitionJdbcRepository.class);
+    private final RollupJdbcRepository rollupJdbcRepository = mock(RollupJdbcRepository.class);
+    private final SketchJdbcRepository sketchJdbcRepository = mock(SketchJdbcRepository.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final PartitionProperties properties = new PartitionProperties();
+
+    @Test
+    void createsMissingPartitionsInTransaction() {
+        properties.setPrecreate(0);
+        String today = "hits_p" + LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE);
+
+        manager().maintain();
+
+        InOrder order = inOrder(transactionManager, partitionJdbcRepository);
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(partitionJdbcRepository).createPartition(eq(today), any(), any());
+        order.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void appliesRetentionToRollupsAndSketches() {
+        properties.setPrecreate(0);
+        properties.setRetention(Duration.ofDays(30));
+        String old = "hits_p" + LocalDate.now().minusDays(40).format(DateTimeFormatter.BASIC_ISO_DATE);
+        when(partitionJdbcRepository.findPartitionNames()).thenReturn(List.of(old));
+        when(rollupJdbcRepository.deleteBefore(eq(Granularity.MINUTE), any(), anyInt())).thenReturn(5000, 10);
+
+        LocalDateTime before = LocalDateTime.now().minusDays(30);
+        manager().maintain();
+
+        verify(partitionJdbcRepository).dropPartition(old);
+        for (Granularity granularity : Granularity.values()) {
+            /*MINUTE: полный пакет, затем неполный*/
+            verify(rollupJdbcRepository, times(granularity == Granularity.MINUTE ? 2 : 1)).deleteBefore(eq(granularity),
+                    argThat(cutoff -> !cutoff.isBefore(granularity.floor(before)) && cutoff.equals(granularity.floor(cutoff))),
+                    anyInt());
+            verify(sketchJdbcRepository).deleteBefore(eq(granularity), any(), anyInt());
+        }
+    }
+
+    @Test
+    void keepsEverythingWithoutRetention() {
+        properties.setPrecreate(0);
+
+        manager().maintain();
+
+        verify(partitionJdbcRepository, never()).dropPartition(anyString());
+        verify(rollupJdbcRepository, never()).deleteBefore(any(), any(), anyInt());
+        verify(sketchJdbcRepository, never()).deleteBefore(any(), any(), anyInt());
+    }
+
+    private HitPartitionManager manager() {
+        return new HitPartitionManager(partitionJdbcRepository, rollupJdbcRepository, sketchJdbcRepository,
+                properties, transactionManager);
+    }
+}
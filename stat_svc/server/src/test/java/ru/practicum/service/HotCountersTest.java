@@ -0,0 +1,97 @@
+package ru.practicum.service;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.config.HotProperties;
+import ru.practicum.model.AppUriId;
+import ru.practicum.model.EncodedHit;
+import ru.practicum.model.TimeRange;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HotCountersTest {
+    private static final byte[] IP_1 = ip(1);
+    private static final byte[] IP_2 = ip(2);
+
+    @Test
+    void disabledCountersCoverNothing() {
+        HotCounters counters = new HotCounters(properties(false, Duration.ofSeconds(1)));
+        LocalDateTime now = LocalDateTime.now();
+        counters.record(List.of(new EncodedHit(1, 10, IP_1, now)));
+
+        assertNull(counters.coverage(now.minusMinutes(5), now.plusMinutes(5)));
+    }
+
+    @Test
+    void currentSliceIsNotTrustedRightAfterStart() {
+        /*слайс в час, чтобы тест не попал на границу слайса*/
+        HotCounters counters = new HotCounters(properties(true, Duration.ofHours(1)));
+        LocalDateTime now = LocalDateTime.now();
+
+        assertNull(counters.coverage(now.minusHours(1), now.plusHours(1)));
+    }
+
+    @Test
+    void countsHitsAndIpsOfTrustedSlices() throws InterruptedException {
+        HotCounters counters = new HotCounters(properties(true, Duration.ofSeconds(1)));
+        awaitNextSecond();
+        LocalDateTime now = LocalDateTime.now();
+        counters.record(List.of(
+                new EncodedHit(1, 10, IP_1, now),
+                new EncodedHit(1, 10, IP_1, now),
+                new EncodedHit(1, 10, IP_2, now),
+                new EncodedHit(1, 11, IP_1, now)));
+
+        TimeRange range = counters.coverage(now.minusMinutes(5), now.plusMinutes(5));
+        assertNotNull(range);
+        assertFalse(range.getFrom().isAfter(now));
+        assertTrue(range.getTo().isAfter(now));
+        assertTrue(range.getFrom().isAfter(now.minusMinutes(5)));
+        assertEquals(Map.of(new AppUriId(1, 10), 3L, new AppUriId(1, 11), 1L), counters.getCounts(range, null));
+        assertEquals(Map.of(new AppUriId(1, 11), 1L), counters.getCounts(range, new int[]{11}));
+        assertEquals(2, counters.getSketches(range, null).get(new AppUriId(1, 10)).estimate());
+    }
+
+    @Test
+    void hitFromFutureSliceStopsCoverageUntilThatSlicePasses() throws InterruptedException {
+        HotCounters counters = new HotCounters(properties(true, Duration.ofSeconds(1)));
+        awaitNextSecond();
+        LocalDateTime now = LocalDateTime.now();
+        assertNotNull(counters.coverage(now.minusMinutes(5), now.plusMinutes(5)));
+
+        counters.record(List.of(new EncodedHit(1, 10, IP_1, now.plusSeconds(30))));
+
+        assertNull(counters.coverage(now.minusMinutes(5), now.plusMinutes(5)));
+    }
+
+    private static HotProperties properties(boolean enabled, Duration slice) {
+        HotProperties properties = new HotProperties();
+        properties.setEnabled(enabled);
+        properties.setSlice(slice);
+        properties.setWindow(slice.multipliedBy(60));
+        properties.setStripes(4);
+        return properties;
+    }
+
+    /*первый слайс, которому память доверяет, - следующий после создания счетчиков*/
+    private static void awaitNextSecond() throws InterruptedException {
+        LocalDateTime start = LocalDateTime.now().withNano(0);
+        while (!LocalDateTime.now().withNano(0).isAfter(start)) {
+            Thread.sleep(20);
+        }
+    }
+
+    private static byte[] ip(int value) {
+        byte[] ip = new byte[16];
+        ip[15] = (byte) value;
+        return ip;
+    }
+}
@@ -0,0 +1,44 @@
+package ru.practicum.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class IpCodecTest {
+    @Test
+    void encodesIpv4AsMappedIpv6() {
+        byte[] encoded = IpCodec.encode("10.0.0.1");
+
+        assertArrayEquals(new byte[]{0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte) 0xFF, (byte) 0xFF, 10, 0, 0, 1}, encoded);
+        assertEquals("10.0.0.1", IpCodec.decode(encoded));
+    }
+
+    @Test
+    void encodesIpv6AsIs() {
+        byte[] encoded = IpCodec.encode("2001:db8::1");
+
+        assertEquals(IpCodec.LENGTH, encoded.length);
+        assertEquals("2001:db8:0:0:0:0:0:1", IpCodec.decode(encoded));
+    }
+
+    @Test
+    void keepsValuesThatAreNotAddresses() {
+        for (String value : new String[]{"unknown", "300.0.0.1", "10.0.0.1/24", "fifteen-chars!!", "адрес"}) {
+            byte[] encoded = IpCodec.encode(value);
+
+            assertNotEquals(IpCodec.LENGTH, encoded.length, value);
+            assertEquals(value, IpCodec.decode(encoded));
+        }
+    }
+
+    @Test
+    void fixedLengthKeepsAddressesAndHashesText() {
+        byte[] address = IpCodec.encode("10.0.0.1");
+
+        assertArrayEquals(address, IpCodec.toFixedLength(address));
+        assertEquals(IpCodec.LENGTH, IpCodec.toFixedLength(IpCodec.encode("unknown")).length);
+        assertArrayEquals(IpCodec.toFixedLength(IpCodec.encode("unknown")), IpCodec.toFixedLength(IpCodec.encode("unknown")));
+    }
+}
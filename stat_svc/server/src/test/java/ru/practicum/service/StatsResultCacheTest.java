@@ -0,0 +1,123 @@
+package ru.practicum.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.practicum.config.ReplicaProperties;
+import ru.practicum.config.StatsCacheProperties;
+import ru.practicum.model.EncodedHit;
+import ru.practicum.model.IdStats;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StatsResultCacheTest {
+    private static final LocalDateTime DAY = LocalDateTime.now().minusDays(2).withHour(0).withMinute(0).withSecond(0).withNano(0);
+
+    private final StatsResultCache cache = new StatsResultCache(properties(), new ReplicaProperties(), new SimpleMeterRegistry());
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void closedRangeIsLoadedOnce() {
+        get(DAY, DAY.plusHours(1), new int[]{10});
+        get(DAY, DAY.plusHours(1), new int[]{10});
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void lateHitInvalidatesClosedRangesCoveringIt() {
+        get(DAY, DAY.plusHours(1), new int[]{10});
+        get(DAY, DAY.plusHours(1), null);
+        get(DAY.plusHours(2), DAY.plusHours(3), new int[]{10});
+
+        cache.onWrite(List.of(hit(10, DAY.plusMinutes(30))));
+        get(DAY, DAY.plusHours(1), new int[]{10});
+        get(DAY, DAY.plusHours(1), null);
+        get(DAY.plusHours(2), DAY.plusHours(3), new int[]{10});
+
+        assertEquals(5, loads.get());
+    }
+
+    @Test
+    void lateHitOfOtherUriKeepsFilteredRange() {
+        get(DAY, DAY.plusHours(1), new int[]{10});
+
+        cache.onWrite(List.of(hit(11, DAY.plusMinutes(30))));
+        get(DAY, DAY.plusHours(1), new int[]{10});
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void liveRangesWithDifferentEndsAreCachedSeparately() {
+        LocalDateTime end = LocalDateTime.now().plusHours(1).withNano(0);
+        get(DAY, end, null);
+        get(DAY, end.plusSeconds(1), null);
+        get(DAY, end, null);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void writeInvalidatesLiveRange() {
+        LocalDateTime end = LocalDateTime.now().plusHours(1);
+        get(DAY, end, new int[]{10});
+
+        cache.onWrite(List.of(hit(10, LocalDateTime.now())));
+        get(DAY, end, new int[]{10});
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void rangeWithinReplicaLagStaysLive() {
+        ReplicaProperties replicaProperties = new ReplicaProperties();
+        replicaProperties.setEnabled(true);
+        replicaProperties.setMaxLag(Duration.ofHours(1));
+        StatsResultCache replicaCache = new StatsResultCache(properties(), replicaProperties, new SimpleMeterRegistry());
+        LocalDateTime end = LocalDateTime.now().minusMinutes(30);
+        get(replicaCache, DAY, end, new int[]{10});
+        get(replicaCache, DAY, end, new int[]{10});
+
+        replicaCache.onWrite(List.of(hit(10, LocalDateTime.now())));
+        get(replicaCache, DAY, end, new int[]{10});
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void rangeBeforeCurrentBucketIsClosedWithoutReplicas() {
+        LocalDateTime end = LocalDateTime.now().minusMinutes(30);
+        get(DAY, end, new int[]{10});
+
+        cache.onWrite(List.of(hit(10, LocalDateTime.now())));
+        get(DAY, end, new int[]{10});
+
+        assertEquals(1, loads.get());
+    }
+
+    private void get(LocalDateTime start, LocalDateTime end, int[] uriIds) {
+        get(cache, start, end, uriIds);
+    }
+
+    private void get(StatsResultCache cache, LocalDateTime start, LocalDateTime end, int[] uriIds) {
+        cache.get(start, end, uriIds, null, () -> {
+            loads.incrementAndGet();
+            return List.of(new IdStats(1, 10, 1));
+        });
+    }
+
+    private static EncodedHit hit(int uriId, LocalDateTime timestamp) {
+        return new EncodedHit(1, uriId, new byte[16], timestamp);
+    }
+
+    private static StatsCacheProperties properties() {
+        StatsCacheProperties properties = new StatsCacheProperties();
+        properties.setEnabled(true);
+        return properties;
+    }
+}
@@ -0,0 +1,108 @@
+package ru.practicum.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+    /*три стандартные ошибки 1.04 / sqrt(4096)*/
+    private static final double ERROR_BOUND = 3 * 1.04 / Math.sqrt(4096);
+
+    @Test
+    void estimatesLargeCardinalityWithinErrorBound() {
+        assertWithinBound(100_000, sketchOf(0, 100_000).estimate());
+    }
+
+    @Test
+    void estimatesSmallCardinalityAlmostExactly() {
+        long estimate = sketchOf(0, 1000).estimate();
+
+        assertTrue(Math.abs(estimate - 1000) <= 20, "оценка " + estimate);
+    }
+
+    @Test
+    void countsRepeatedValuesOnce() {
+        HyperLogLog sketch = sketchOf(0, 5000);
+        HyperLogLog repeated = sketchOf(0, 5000);
+        for (int i = 0; i < 5000; i++) {
+            repeated.add(ip(i));
+        }
+
+        assertEquals(sketch.estimate(), repeated.estimate());
+    }
+
+    @Test
+    void mergeEqualsSketchOfUnionAndIsIdempotent() {
+        HyperLogLog left = sketchOf(0, 60_000);
+        HyperLogLog right = sketchOf(40_000, 100_000);
+
+        HyperLogLog merged = left.copy().merge(right);
+        assertArrayEquals(sketchOf(0, 100_000).toBytes(), merged.toBytes());
+        assertWithinBound(100_000, merged.estimate());
+
+        long estimate = merged.estimate();
+        merged.merge(right).merge(left);
+        assertEquals(estimate, merged.estimate());
+    }
+
+    @Test
+    void copyIsIndependent() {
+        HyperLogLog sketch = sketchOf(0, 100);
+        HyperLogLog copy = sketch.copy();
+        copy.merge(sketchOf(100, 10_000));
+
+        assertEquals(sketchOf(0, 100).estimate(), sketch.estimate());
+    }
+
+    @Test
+    void roundTripsSparseSketch() {
+        HyperLogLog sketch = sketchOf(0, 50);
+        byte[] bytes = sketch.toBytes();
+
+        assertEquals(1, bytes[0]);
+        assertTrue(bytes.length < 1 + 4096);
+        HyperLogLog restored = HyperLogLog.fromBytes(bytes);
+        assertArrayEquals(bytes, restored.toBytes());
+        assertEquals(sketch.estimate(), restored.estimate());
+    }
+
+    @Test
+    void roundTripsDenseSketch() {
+        HyperLogLog sketch = sketchOf(0, 100_000);
+        byte[] bytes = sketch.toBytes();
+
+        assertEquals(0, bytes[0]);
+        assertEquals(1 + 4096, bytes.length);
+        HyperLogLog restored = HyperLogLog.fromBytes(bytes);
+        assertArrayEquals(bytes, restored.toBytes());
+        assertEquals(sketch.estimate(), restored.estimate());
+    }
+
+    @Test
+    void emptyBytesGiveEmptySketch() {
+        assertEquals(0, HyperLogLog.fromBytes(null).estimate());
+        assertEquals(0, HyperLogLog.fromBytes(new byte[0]).estimate());
+        assertEquals(0, HyperLogLog.fromBytes(new HyperLogLog().toBytes()).estimate());
+    }
+
+    private static HyperLogLog sketchOf(int from, int to) {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = from; i < to; i++) {
+            sketch.add(ip(i));
+        }
+        return sketch;
+    }
+
+    /*IPv4 в виде IPv6-mapped, как IP хранятся в hits*/
+    private static byte[] ip(int value) {
+        return new byte[]{0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte) 0xFF, (byte) 0xFF,
+                (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+
+    private static void assertWithinBound(long expected, long estimate) {
+        double error = Math.abs(estimate - expected) / (double) expected;
+        assertTrue(error <= ERROR_BOUND, "оценка " + estimate + ", ошибка " + error);
+    }
+}
@@ -0,0 +1,84 @@
+package ru.practicum.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpaceSavingTest {
+    private static final int KEYS = 1000;
+    private static final int CAPACITY = 50;
+
+    @Test
+    void keepsHeavyHittersOfSkewedStream() {
+        /*частота ключа k (с 1) - 10000 / k^2, порядок потока перемешан*/
+        long[] frequencies = new long[KEYS + 1];
+        List<Long> stream = new ArrayList<>();
+        for (int key = 1; key <= KEYS; key++) {
+            frequencies[key] = Math.max(1, 10_000 / ((long) key * key));
+            for (long i = 0; i < frequencies[key]; i++) {
+                stream.add((long) key);
+            }
+        }
+        Collections.shuffle(stream, new Random(42));
+        SpaceSaving summary = new SpaceSaving(CAPACITY);
+        stream.forEach(key -> summary.offer(key, 1));
+
+        long total = stream.size();
+        Set<Long> kept = new HashSet<>();
+        summary.keys().forEach(kept::add);
+        assertEquals(CAPACITY, kept.size());
+        for (int key = 1; key <= KEYS; key++) {
+            if (kept.contains((long) key)) {
+                assertTrue(summary.count(key) >= frequencies[key], "счетчик ключа " + key + " меньше частоты");
+            } else {
+                assertTrue(frequencies[key] <= summary.absentBound(), "ключ " + key + " выше absentBound");
+            }
+            if (frequencies[key] > total / CAPACITY) {
+                assertTrue(kept.contains((long) key), "частый ключ " + key + " вытеснен");
+            }
+        }
+        assertTrue(summary.absentBound() <= total / CAPACITY);
+
+        List<Long> top = StreamSupport.stream(summary.keys().spliterator(), false)
+                .sorted(Comparator.comparingLong(summary::count).reversed())
+                .limit(3)
+                .collect(Collectors.toList());
+        assertEquals(List.of(1L, 2L, 3L), top);
+    }
+
+    @Test
+    void countsExactlyWhileNotFull() {
+        SpaceSaving summary = new SpaceSaving(CAPACITY);
+        summary.offer(7, 3);
+        summary.offer(7, 2);
+        summary.offer(9, 1);
+
+        assertEquals(5, summary.count(7));
+        assertEquals(1, summary.count(9));
+        assertEquals(0, summary.count(8));
+        assertEquals(0, summary.absentBound());
+    }
+
+    @Test
+    void newKeyInheritsMinimumCounter() {
+        SpaceSaving summary = new SpaceSaving(2);
+        summary.offer(1, 5);
+        summary.offer(2, 3);
+        summary.offer(3, 1);
+
+        assertEquals(0, summary.count(2));
+        assertEquals(4, summary.count(3));
+        assertEquals(4, summary.absentBound());
+    }
+}
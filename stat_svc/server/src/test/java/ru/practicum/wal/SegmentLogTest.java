@@ -0,0 +1,99 @@
+package ru.practicum.wal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SegmentLogTest {
+    private static final int SEGMENT_SIZE = 256;
+    private static final String FIRST_SEGMENT = "00000000000000000000.wal";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysRecordsAcrossSegmentsAfterReopen() throws IOException {
+        SegmentLog log = open();
+        List<String> written = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            String record = "record-" + i;
+            log.append(bytes(record));
+            written.add(record);
+        }
+        log.close();
+
+        assertEquals(written, readAll(open()));
+    }
+
+    @Test
+    void dropsRecordWithCrcMismatchAndEverythingAfterIt() throws IOException {
+        SegmentLog log = open();
+        long secondStart = log.append(bytes("first"));
+        log.append(bytes("second"));
+        log.append(bytes("third"));
+        log.close();
+
+        /*повреждены данные второй записи: длина и CRC на месте, CRC не сходится*/
+        writeAt(secondStart + WalSegment.HEADER, bytes("X"));
+
+        SegmentLog reopened = open();
+        assertEquals(List.of("first"), readAll(reopened));
+        assertEquals(secondStart, reopened.getWritten());
+    }
+
+    @Test
+    void truncatesTornTailAndAppendsAfterLastWholeRecord() throws IOException {
+        SegmentLog log = open();
+        log.append(bytes("first"));
+        long end = log.append(bytes("second"));
+        log.close();
+
+        /*длина записана, а данные и CRC до диска не дошли*/
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve(FIRST_SEGMENT).toFile(), "rw")) {
+            file.seek(end);
+            file.writeInt(40);
+            file.seek(end + WalSegment.HEADER);
+            file.write(bytes("torn"));
+        }
+
+        SegmentLog reopened = open();
+        assertEquals(end, reopened.getWritten());
+        reopened.append(bytes("third"));
+        reopened.close();
+
+        assertEquals(List.of("first", "second", "third"), readAll(open()));
+    }
+
+    private SegmentLog open() throws IOException {
+        return SegmentLog.open(directory, SEGMENT_SIZE, Long.MAX_VALUE, false);
+    }
+
+    private void writeAt(long position, byte[] data) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve(FIRST_SEGMENT).toFile(), "rw")) {
+            file.seek(position);
+            file.write(data);
+        }
+    }
+
+    private static List<String> readAll(SegmentLog log) {
+        List<String> records = new ArrayList<>();
+        SegmentLog.Entry entry = log.read(log.getStart());
+        while (entry != null) {
+            records.add(new String(entry.getData(), StandardCharsets.UTF_8));
+            entry = log.read(entry.getNext());
+        }
+        return records;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}